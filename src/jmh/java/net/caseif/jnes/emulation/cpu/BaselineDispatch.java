@@ -0,0 +1,582 @@
+/*
+ * This file is a part of jNES.
+ * Copyright (c) 2018-2019, Max Roncace <mproncace@gmail.com>
+ *
+ * The MIT License
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package net.caseif.jnes.emulation.cpu;
+
+import net.caseif.jnes.model.cpu.AddressingMode;
+import net.caseif.jnes.model.cpu.Instruction;
+import net.caseif.jnes.model.cpu.InterruptType;
+import net.caseif.jnes.util.tuple.Pair;
+
+import static net.caseif.jnes.emulation.cpu.CpuRegisters.Register.A;
+import static net.caseif.jnes.emulation.cpu.CpuRegisters.Register.X;
+import static net.caseif.jnes.emulation.cpu.CpuRegisters.Register.Y;
+import static net.caseif.jnes.util.MathHelper.unsign;
+
+/**
+ * The interpreter's dispatch as it was before the opcode table, kept as a
+ * baseline for {@link CpuDispatchBenchmark}.
+ *
+ * <p>Each instruction is decoded through {@link Instruction#fromOpcode(byte)},
+ * its operand is read through a switch on the addressing mode into a boxed
+ * {@link Pair}, and it's executed through a switch on the mnemonic. The code
+ * is copied verbatim, bugs included, apart from operating on a
+ * {@link CpuInterpreter}'s state from outside and dropping the logging of
+ * every instruction, which would dwarf the dispatch itself.</p>
+ */
+final class BaselineDispatch {
+
+    private final CpuInterpreter cpu;
+    private final CpuStatus status;
+    private final int prgLength;
+
+    BaselineDispatch(CpuInterpreter cpu, int prgLength) {
+        this.cpu = cpu;
+        this.status = cpu.getStatus();
+        this.prgLength = prgLength;
+    }
+
+    void tick() {
+        executeInstruction(Instruction.fromOpcode(readPrg()));
+    }
+
+    void executeInstruction(Instruction instr) {
+        Pair<Byte, Short> mp = getM(instr.getAddressingMode());
+        byte m = mp.first();
+        short addr = mp.second();
+
+        switch (instr.getMnemonic()) {
+            // storage
+            case LDA:
+                cpu.regs.setAcc(m);
+
+                setZeroAndNegFlags(A);
+
+                break;
+            case LDX:
+                cpu.regs.setX(m);
+
+                setZeroAndNegFlags(X);
+
+                break;
+            case LDY:
+                cpu.regs.setY(m);
+
+                setZeroAndNegFlags(Y);
+
+                break;
+            case STA:
+                cpu.memory.write(addr, (byte) cpu.regs.getAcc());
+                break;
+            case STX:
+                cpu.memory.write(addr, (byte) cpu.regs.getX());
+                break;
+            case STY:
+                cpu.memory.write(addr, (byte) cpu.regs.getY());
+                break;
+            case TAX:
+                cpu.regs.setX((byte) cpu.regs.getAcc());
+
+                setZeroAndNegFlags(X);
+
+                break;
+            case TAY:
+                cpu.regs.setY((byte) cpu.regs.getAcc());
+
+                setZeroAndNegFlags(Y);
+
+                break;
+            case TSX:
+                cpu.regs.setX((byte) cpu.regs.getSp());
+
+                setZeroAndNegFlags(X);
+
+                break;
+            case TXA:
+                cpu.regs.setAcc((byte) cpu.regs.getX());
+
+                setZeroAndNegFlags(A);
+
+                break;
+            case TYA:
+                cpu.regs.setAcc((byte) cpu.regs.getY());
+
+                setZeroAndNegFlags(A);
+
+                break;
+            case TXS:
+                cpu.regs.setSp((byte) cpu.regs.getX());
+                break;
+            // math
+            case ADC: {
+                byte acc0 = (byte) cpu.regs.getAcc();
+
+                int c = status.getFlag(CpuStatus.Flag.CARRY) ? 1 : 0;
+
+                cpu.regs.setAcc((byte) (acc0 + m + c));
+
+                setZeroAndNegFlags(A);
+
+                byte a7 = (byte) (acc0 >> 7);
+                byte m7 = (byte) (m >> 7);
+
+                // unsigned overflow will occur if at least two among the most significant operand bits and the carry bit are set
+                boolean carry = ((a7 & m7) | (a7 & c) | (m7 & c)) != 0;
+                if (carry) {
+                    status.setFlag(CpuStatus.Flag.CARRY);
+                } else {
+                    status.clearFlag(CpuStatus.Flag.CARRY);
+                }
+
+                // signed overflow will occur if the sign of both inputs if different from the sign of the result
+                boolean overflow = ((acc0 ^ cpu.regs.getAcc()) & (m ^ cpu.regs.getAcc()) & 0x80) != 0;
+                if (overflow) {
+                    status.setFlag(CpuStatus.Flag.OVERFLOW);
+                } else {
+                    status.clearFlag(CpuStatus.Flag.OVERFLOW);
+                }
+                break;
+            }
+            case SBC: {
+                byte acc0 = (byte) cpu.regs.getAcc();
+
+                byte notCarry = status.getFlag(CpuStatus.Flag.CARRY) ? (byte) 0 : (byte) 1;
+
+                cpu.regs.setAcc((byte) (acc0 - m - notCarry));
+
+                setZeroAndNegFlags(A);
+
+                boolean borrow = (acc0 >> 7) + ((255 - m) >> 7) + (((cpu.regs.getAcc() & 0x40) & ((255 - m) & 0x40)) >> 6) <= 1;
+                if (borrow) {
+                    status.setFlag(CpuStatus.Flag.CARRY);
+                } else {
+                    status.clearFlag(CpuStatus.Flag.CARRY);
+                }
+
+                boolean overflow = ((acc0 ^ cpu.regs.getAcc()) & ((255 - m) ^ cpu.regs.getAcc()) & 0x80) != 0;
+                if (overflow) {
+                    status.setFlag(CpuStatus.Flag.OVERFLOW);
+                } else {
+                    status.clearFlag(CpuStatus.Flag.OVERFLOW);
+                }
+                break;
+            }
+            case DEC:
+                short decRes = (short) (m - 1);
+
+                cpu.memory.write(addr, (byte) decRes);
+
+                setZeroAndNegFlags(decRes);
+
+                break;
+            case DEX:
+                cpu.regs.setX((byte) (cpu.regs.getX() - 1));
+
+                setZeroAndNegFlags(X);
+
+                break;
+            case DEY:
+                cpu.regs.setY((byte) (cpu.regs.getY() - 1));
+
+                setZeroAndNegFlags(Y);
+
+                break;
+            case INC:
+                short incRes = (short) (m + 1);
+
+                cpu.memory.write(addr, (byte) incRes);
+
+                setZeroAndNegFlags(incRes);
+
+                break;
+            case INX:
+                cpu.regs.setX((byte) (cpu.regs.getX() + 1));
+
+                setZeroAndNegFlags(X);
+
+                break;
+            case INY:
+                cpu.regs.setY((byte) (cpu.regs.getY() + 1));
+
+                setZeroAndNegFlags(Y);
+
+                break;
+            // logic
+            case AND:
+                cpu.regs.setAcc((byte) (cpu.regs.getAcc() & m));
+
+                setZeroAndNegFlags(cpu.regs.getAcc());
+
+                break;
+            case ASL:
+                shift(instr, false, false, m, addr);
+                break;
+            case LSR:
+                shift(instr, true, false, m, addr);
+                break;
+            case EOR:
+                cpu.regs.setAcc((byte) (cpu.regs.getAcc() ^ m));
+
+                setZeroAndNegFlags(A);
+
+                break;
+            case ORA:
+                cpu.regs.setAcc((byte) (cpu.regs.getAcc() | m));
+
+                setZeroAndNegFlags(A);
+
+                break;
+            case ROL:
+                shift(instr, false, true, m, addr);
+
+                setZeroAndNegFlags(A);
+
+                break;
+            case ROR:
+                shift(instr, true, true, m, addr);
+
+                setZeroAndNegFlags(A);
+
+                break;
+            // branching
+            case BCC:
+                if (!status.getFlag(CpuStatus.Flag.CARRY)) {
+                    branch(m);
+                }
+                break;
+            case BCS:
+                if (status.getFlag(CpuStatus.Flag.CARRY)) {
+                    branch(m);
+                }
+                break;
+            case BNE:
+                if (!status.getFlag(CpuStatus.Flag.ZERO)) {
+                    branch(m);
+                }
+                break;
+            case BEQ:
+                if (status.getFlag(CpuStatus.Flag.ZERO)) {
+                    branch(m);
+                }
+                break;
+            case BPL:
+                if (!status.getFlag(CpuStatus.Flag.NEGATIVE)) {
+                    branch(m);
+                }
+                break;
+            case BMI:
+                if (status.getFlag(CpuStatus.Flag.NEGATIVE)) {
+                    branch(m);
+                }
+                break;
+            case BVC:
+                if (!status.getFlag(CpuStatus.Flag.OVERFLOW)) {
+                    branch(m);
+                }
+                break;
+            case BVS:
+                if (status.getFlag(CpuStatus.Flag.OVERFLOW)) {
+                    branch(m);
+                }
+                break;
+            case JMP:
+                cpu.regs.setPc(addr);
+                break;
+            case JSR:
+                int pc = cpu.regs.getPc() - 1;
+
+                cpu.memory.push(cpu.regs, (byte) (((pc >> 8) & 0xFF) )); // push MSB of PC
+                cpu.memory.push(cpu.regs, (byte) ((pc & 0xFF)));        // push LSB of PC
+
+                cpu.regs.setPc(addr);
+
+                break;
+            case RTS: {
+                byte pcl = cpu.memory.pop(cpu.regs); // pop LSB of PC
+                byte pcm = cpu.memory.pop(cpu.regs); // pop MSB of PC
+
+                cpu.regs.setPc((short) (((pcm << 8) | pcl) + 1));
+
+                break;
+            }
+            // registers
+            case CLC:
+                status.clearFlag(CpuStatus.Flag.CARRY);
+                break;
+            case CLD:
+                // no-op since decimal mode is unimplemented
+                break;
+            case CLI:
+                status.clearFlag(CpuStatus.Flag.INTERRUPT_DISABLE);
+                break;
+            case CLV:
+                status.clearFlag(CpuStatus.Flag.OVERFLOW);
+                break;
+            case CMP:
+                cmp(cpu.regs.getAcc(), unsign(m));
+                break;
+            case CPX:
+                cmp(cpu.regs.getX(), unsign(m));
+                break;
+            case CPY:
+                cmp(cpu.regs.getY(), unsign(m));
+                break;
+            case SEC:
+                status.setFlag(CpuStatus.Flag.CARRY);
+                break;
+            case SED:
+                // no-op since decimal mode is unimplemented
+                break;
+            case SEI:
+                status.setFlag(CpuStatus.Flag.INTERRUPT_DISABLE);
+                break;
+            // stack
+            case PHA:
+                cpu.memory.push(cpu.regs, (byte) cpu.regs.getAcc());
+                break;
+            case PHP:
+                cpu.memory.push(cpu.regs, status.serialize());
+                break;
+            case PLA:
+                cpu.regs.setAcc(cpu.memory.pop(cpu.regs));
+
+                setZeroAndNegFlags(A);
+
+                break;
+            case PLP:
+                status.deserialize(cpu.memory.pop(cpu.regs));
+                break;
+            // system
+            case BRK: {
+                cpu.issueInterrupt(InterruptType.BRK);
+                break;
+            }
+            case RTI: {
+                status.deserialize(cpu.memory.pop(cpu.regs)); // pop flags
+
+                // ORDER IS IMPORTANT
+                short newPc = (short) (cpu.memory.pop(cpu.regs) | (cpu.memory.pop(cpu.regs) << 8));
+
+                cpu.regs.setPc(newPc);
+
+                break;
+            }
+            case NOP:
+                // no-op
+                break;
+            case KIL:
+                cpu.kil();
+            default:
+                //TODO
+                // no-op
+                for (int i = 0; i < instr.getLength() - 1; i++) {
+                    readPrg();
+                }
+                break;
+            //default:
+            //    throw new UnsupportedOperationException("Unsupported instruction " + instr.getOpcode().name());
+        }
+
+        if (cpu.regs.getPc() - 0x8000 >= prgLength) {
+            cpu.kil();
+        }
+    }
+
+    private void setZeroAndNegFlags(CpuRegisters.Register reg) {
+        setZeroAndNegFlags(getVal(reg));
+    }
+
+    private void setZeroAndNegFlags(short val) {
+        setZeroFlag(val);
+        setNegFlag(val);
+    }
+
+    private void setZeroFlag(short res) {
+        if (res == 0) {
+            status.setFlag(CpuStatus.Flag.ZERO);
+        } else {
+            status.clearFlag(CpuStatus.Flag.ZERO);
+        }
+    }
+
+    private void setNegFlag(short res) {
+        if ((res & 0x80) != 0) {
+            status.setFlag(CpuStatus.Flag.NEGATIVE);
+        } else {
+            status.clearFlag(CpuStatus.Flag.NEGATIVE);
+        }
+    }
+
+    private short getVal(CpuRegisters.Register reg) throws IllegalArgumentException {
+        switch (reg) {
+            case A:
+                return cpu.regs.getAcc();
+            case X:
+                return cpu.regs.getX();
+            case Y:
+                return cpu.regs.getY();
+            default:
+                throw new IllegalArgumentException("Invalid register " + reg.name());
+        }
+    }
+
+    private void cmp(short reg, short m) {
+        if (reg >= 0x80) {
+            status.setFlag(CpuStatus.Flag.NEGATIVE);
+        }
+
+        if (reg >= m) {
+            status.setFlag(CpuStatus.Flag.CARRY);
+            if (reg == m) {
+                status.setFlag(CpuStatus.Flag.ZERO);
+            } else {
+                status.clearFlag(CpuStatus.Flag.ZERO);
+            }
+        } else {
+            status.clearFlag(CpuStatus.Flag.CARRY);
+        }
+    }
+
+    private void shift(Instruction instr, boolean right, boolean rotate, byte m, short addr) {
+        // fetch the target value either from the accumulator or from memory
+        byte val = instr.getAddressingMode() == AddressingMode.IMP ? (byte) cpu.regs.getAcc() : m;
+
+        // rotation mask - contains information about the carry bit
+        byte rMask = 0;
+        if (rotate) {
+            // set if only if we're rotating
+            rMask = (byte) (status.getFlag(CpuStatus.Flag.CARRY) ? 1 : 0);
+            if (right) {
+                // if we're rotating to the right, the carry bit gets copied to bit 7
+                rMask <<= 7;
+            }
+        }
+
+        // carry mask - set to the bit which will be copied to the carry flag
+        byte cMask = right ? (byte) 0x01 : (byte) 0x80;
+        if ((val & cMask) != 0) {
+            status.setFlag(CpuStatus.Flag.CARRY);
+        } else {
+            status.clearFlag(CpuStatus.Flag.CARRY);
+        }
+
+        // compute the result by shifting and applying the rotation mask
+        byte res = (byte) ((right ? (cpu.regs.getAcc() >> 1) : (cpu.regs.getAcc() << 1)) | rMask);
+
+        // set the zero and negative flags based on the result
+        setZeroFlag(res);
+        setNegFlag(res);
+
+        // write the result to either the accumulator or to memory, depending on the addressing mode
+        if (instr.getAddressingMode() == AddressingMode.IMP) {
+            cpu.regs.setAcc(res);
+        } else {
+            cpu.memory.write(addr, res);
+        }
+    }
+
+    private void branch(byte m) {
+        cpu.regs.setPc((short) (cpu.regs.getPc() + m));
+    }
+
+    /**
+     * Returns value M, along with the address it was read from, if applicable.
+     * @param mode The addressing mode to use
+     * @return The read value along with the address it was obtained from (if applicable)
+     */
+    private Pair<Byte, Short> getM(AddressingMode mode) {
+        switch (mode) {
+            case IMM: {
+                return Pair.of(readPrg(), (short) 0);
+            }
+            case REL: {
+                return Pair.of(readPrg(), (short) 0);
+            }
+            case ZRP: {
+                short addr = unsign(readPrg());
+                return Pair.of(cpu.memory.read(addr), addr);
+            }
+            case ZPX: {
+                byte addr = readPrg();
+                addr += cpu.regs.getX();
+                return Pair.of(cpu.memory.read(addr), unsign(addr));
+            }
+            case ZPY: {
+                byte addr = readPrg();
+                addr += cpu.regs.getY();
+                return Pair.of(cpu.memory.read(addr), unsign(addr));
+            }
+            case ABS: {
+                short addr = readShort();
+                return Pair.of(cpu.memory.read(addr), addr);
+            }
+            case ABX: {
+                short addr = (short) (cpu.regs.getX() + readShort());
+                return Pair.of(cpu.memory.read(addr), addr);
+            }
+            case ABY: {
+                short addr = (short) (cpu.regs.getY() + readShort());
+                return Pair.of(cpu.memory.read(addr), addr);
+            }
+            case IND: {
+                short origAddr = readShort();
+                byte addrLow = cpu.memory.read(origAddr);
+                byte addrHigh = cpu.memory.read(origAddr + 1);
+                short addr = (short) (addrLow | (addrHigh << 8));
+                return Pair.of(cpu.memory.read(addr), addr);
+            }
+            case IZX: {
+                short origAddr = (short) (cpu.regs.getX() + unsign(readPrg()));
+                byte addrLow = cpu.memory.read(origAddr);
+                byte addrHigh = cpu.memory.read(origAddr + 1);
+                short addr = (short) (addrLow | (addrHigh << 8));
+                return Pair.of(cpu.memory.read(addr), addr);
+            }
+            case IZY: {
+                byte origAddr = readPrg();
+                byte addrLow = cpu.memory.read(origAddr);
+                byte addrHigh = cpu.memory.read(origAddr + 1);
+                short addr = (short) (cpu.regs.getY() + (addrLow | (addrHigh << 8)));
+                return Pair.of(cpu.memory.read(addr), addr);
+            }
+            case IMP: {
+                return Pair.of((byte) 0, (short) 0);
+            }
+            default: {
+                throw new AssertionError("Unhandled addressing mode " + mode.name());
+            }
+        }
+    }
+
+    private byte readPrg() {
+        return cpu.memory.read(cpu.regs.popPc());
+    }
+
+    private short readShort() {
+        // ORDER IS IMPORTANT
+        return (short) (unsign(readPrg()) | (unsign(readPrg()) << 8));
+    }
+
+}
@@ -0,0 +1,110 @@
+/*
+ * This file is a part of jNES.
+ * Copyright (c) 2018-2019, Max Roncace <mproncace@gmail.com>
+ *
+ * The MIT License
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package net.caseif.jnes.emulation.cpu;
+
+import net.caseif.jnes.model.Cartridge;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the pre-bound opcode dispatch table against the interpreter's
+ * original dispatch (see {@link BaselineDispatch}), as well as against
+ * executing out of the pre-decoded block cache.
+ *
+ * <p>All benchmarks run the same program, so the difference between them is
+ * the per-instruction fetch, decode and dispatch overhead.</p>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CpuDispatchBenchmark {
+
+    private static final int INSTRUCTIONS = 1000;
+
+    // a tight loop incrementing the first page of RAM
+    private static final byte[] PROGRAM = new byte[] {
+            (byte) 0xA2, 0x00,          // $8000: LDX #$00
+            (byte) 0xB5, 0x10,          // $8002: LDA $10,X
+            (byte) 0x69, 0x01,          // $8004: ADC #$01
+            (byte) 0x95, 0x10,          // $8006: STA $10,X
+            (byte) 0xE8,                // $8008: INX
+            (byte) 0xD0, (byte) 0xF7,   // $8009: BNE $8002
+            0x4C, 0x00, (byte) 0x80     // $800B: JMP $8000
+    };
+
+    private CpuInterpreter cpu;
+    private BaselineDispatch baseline;
+
+    @Setup
+    public void setUp() {
+        byte[] prg = new byte[16384];
+        System.arraycopy(PROGRAM, 0, prg, 0, PROGRAM.length);
+
+        cpu = new CpuInterpreter(new Cartridge(prg, new byte[0], Cartridge.MirroringMode.HORIZONTAL,
+                false, false, 0));
+        baseline = new BaselineDispatch(cpu, prg.length);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(INSTRUCTIONS)
+    public void blockDispatch() {
+        for (int i = 0; i < INSTRUCTIONS; i++) {
+            cpu.executeNext();
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(INSTRUCTIONS)
+    public void tableDispatch() {
+        for (int i = 0; i < INSTRUCTIONS; i++) {
+            cpu.executeUncached();
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(INSTRUCTIONS)
+    public void switchDispatch() {
+        for (int i = 0; i < INSTRUCTIONS; i++) {
+            baseline.tick();
+        }
+    }
+
+}
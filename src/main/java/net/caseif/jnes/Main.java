@@ -28,10 +28,13 @@ package net.caseif.jnes;
 import net.caseif.jnes.disassembly.PrgDisassembler;
 import net.caseif.jnes.disassembly.RomDumper;
 import net.caseif.jnes.emulation.cpu.CpuInterpreter;
+import net.caseif.jnes.emulation.cpu.RunResult;
+import net.caseif.jnes.emulation.cpu.trace.AsyncFileTracer;
+import net.caseif.jnes.loader.RomIndex;
 import net.caseif.jnes.loader.RomLoader;
 import net.caseif.jnes.model.Cartridge;
-import net.caseif.jnes.util.exception.CpuHaltedException;
 
+import java.io.BufferedWriter;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
@@ -39,16 +42,49 @@ import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 import javax.annotation.Nullable;
 
 public class Main {
 
+    // number of CPU cycles to run the emulate task for
+    private static final long EMULATED_CYCLES = 300000000L;
+
+    private static final String INDEX_FILE_NAME = "jnes.idx";
+
     private static final DirectoryStream.Filter<Path> ASM_FILTER = p -> p.getFileName().toString().endsWith(".asm");
 
     public static void main(String[] args) throws IOException {
+        // options are given as --name=value and may appear anywhere
+        Map<String, String> options = new HashMap<>();
+        List<String> positional = new ArrayList<>();
+        for (String arg : args) {
+            if (arg.startsWith("--")) {
+                int split = arg.indexOf('=');
+                if (split == -1) {
+                    options.put(arg.substring(2), "");
+                } else {
+                    options.put(arg.substring(2, split), arg.substring(split + 1));
+                }
+            } else {
+                positional.add(arg);
+            }
+        }
+        args = positional.toArray(new String[0]);
+
         if (args.length < 2 || args.length > 3) {
-            System.out.println("Usage: java -jar jnes.jar <task> <input ROM> [output file]");
+            System.out.println("Usage: java -jar jnes.jar <task> <input ROM> [output file] [options]");
+            System.out.println("       java -jar jnes.jar index <ROM directory> [index file] [options]");
+            System.out.println("Options for the emulate task:");
+            System.out.println("  --frame-hashes=<file>  write a hash of each frame to the given file");
+            System.out.println("  --compile              compile hot blocks of code");
+            System.out.println("Options for the index task, which look up ROMs without updating the index:");
+            System.out.println("  --crc=<hex>            list the ROMs whose PRG and CHR match the given CRC32");
+            System.out.println("  --mapper=<number>      list the ROMs using the given mapper");
             return;
         }
 
@@ -89,10 +125,7 @@ public class Main {
                     outputPath = inputPath.getParent().resolve(fileName + ".nesa");
                 }
 
-                Cartridge cart;
-                try (InputStream inputStream = Files.newInputStream(inputPath)) {
-                    cart = new RomLoader().load(inputStream);
-                }
+                Cartridge cart = new RomLoader().load(inputPath);
 
                 try (OutputStream outputStream = Files.newOutputStream(outputPath)) {
                     new RomDumper(cart).dump(outputStream);
@@ -101,29 +134,80 @@ public class Main {
                 break;
             }
             case "emulate": {
-                Cartridge cart;
-                try (InputStream input = Files.newInputStream(Paths.get(args[1]))) {
-                    cart = new RomLoader().load(input);
-                }
+                Cartridge cart = new RomLoader().load(Paths.get(args[1]));
 
                 CpuInterpreter ci = new CpuInterpreter(cart);
+                // compilation is opt-in while it's still being validated
+                // against the interpreter
+                ci.setCompilationEnabled(options.containsKey("compile"));
 
-                long time = System.nanoTime();
-                int cycles = 100000000;
-                for (int i = 0; i < cycles; i++) {
-                    try {
-                        ci.tick();
-
-                        for (int j = 0; j < 3; j++) {
-                            ci.getPpu().tick();
-                        }
-                    } catch (CpuHaltedException ex) {
-                        System.out.println("Halted.");
-                        break;
+                // optionally trace execution to the output file
+                AsyncFileTracer tracer = null;
+                if (args.length == 3) {
+                    tracer = new AsyncFileTracer(Paths.get(args[2]));
+                    ci.setTracer(tracer);
+                }
+
+                String hashesPath = options.get("frame-hashes");
+                ci.getPpu().setFrameHashingEnabled(hashesPath != null);
+
+                try {
+                    long time = System.nanoTime();
+                    RunResult result = ci.runCycles(EMULATED_CYCLES);
+                    time = System.nanoTime() - time;
+
+                    if (result.isHalted()) {
+                        System.out.println("Halted (" + result.getHaltReason() + ").");
+                    }
+                    System.out.println("Average speed: " + ((double) result.getCycles() / time * 1000000000.0)
+                            + " cycles/sec (" + result.getFrames() + " frames)");
+
+                    if (hashesPath != null) {
+                        writeFrameHashes(ci.getPpu().getFrameHashes(), Paths.get(hashesPath));
+                    }
+                } finally {
+                    if (tracer != null) {
+                        tracer.close();
                     }
                 }
+
+                break;
+            }
+            case "index": {
+                Path root = Paths.get(args[1]);
+                Path indexPath = args.length == 3 ? Paths.get(args[2]) : root.resolve(INDEX_FILE_NAME);
+
+                String crc = options.get("crc");
+                String mapper = options.get("mapper");
+                if (crc != null || mapper != null) {
+                    // lookups only consult the index, never the ROMs
+                    RomIndex index = RomIndex.read(indexPath);
+                    List<RomIndex.Entry> matches = crc != null
+                            ? index.findByCrc(Integer.parseUnsignedInt(crc, 16))
+                            : index.findByMapper(Integer.parseInt(mapper));
+                    for (RomIndex.Entry entry : matches) {
+                        System.out.println(String.format("%08X  mapper %3d  %s",
+                                entry.getRomCrc(), entry.getMapper(), entry.getPath()));
+                    }
+                    break;
+                }
+
+                RomIndex previous = Files.exists(indexPath) ? RomIndex.read(indexPath) : RomIndex.empty();
+
+                long time = System.nanoTime();
+                RomIndex index = previous.update(root);
                 time = System.nanoTime() - time;
-                System.out.println("Average speed: " + ((double) cycles / time * 1000000000.0) + " cycles/sec");
+
+                index.write(indexPath);
+
+                System.out.println("Indexed " + index.getEntries().size() + " ROMs (" + index.getReadCount()
+                        + " read) in " + (time / 1000000) + " ms.");
+                if (!index.getFailedPaths().isEmpty()) {
+                    System.err.println("Skipped " + index.getFailedPaths().size() + " unreadable paths:");
+                    for (String path : index.getFailedPaths()) {
+                        System.err.println("  " + path);
+                    }
+                }
 
                 break;
             }
@@ -135,6 +219,16 @@ public class Main {
         }
     }
 
+    // writes each hash on its own line, in hex
+    private static void writeFrameHashes(long[] hashes, Path outputPath) throws IOException {
+        try (BufferedWriter writer = Files.newBufferedWriter(outputPath)) {
+            for (long hash : hashes) {
+                writer.write(String.format("%016x", hash));
+                writer.newLine();
+            }
+        }
+    }
+
     private static String parseFileName(Path inputPath) {
         if (!inputPath.getFileName().toString().contains(".")) {
             return inputPath.getFileName().toString();
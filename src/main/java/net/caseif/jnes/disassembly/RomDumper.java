@@ -49,6 +49,12 @@ public class RomDumper {
             writer.write("Ignore mirroring control: " + cart.doesIgnoreMirroringControl() + "\n");
             writer.write("Cartridge PRG RAM: " + cart.hasCartridgePrgRam() + "\n");
             writer.write("Mapper: " + cart.getMapper() + "\n");
+            writer.write("Submapper: " + cart.getSubmapper() + "\n");
+            writer.write("PRG RAM size: " + cart.getPrgRamSize() + "\n");
+            writer.write("PRG NVRAM size: " + cart.getPrgNvramSize() + "\n");
+            writer.write("CHR RAM size: " + cart.getChrRamSize() + "\n");
+            writer.write("CHR NVRAM size: " + cart.getChrNvramSize() + "\n");
+            writer.write("Timing region: " + cart.getTimingRegion().name() + "\n");
             writer.write('\n');
 
             byte[] prg = cart.getPrgRom();
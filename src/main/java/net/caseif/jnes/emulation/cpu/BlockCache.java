@@ -0,0 +1,272 @@
+/*
+ * This file is a part of jNES.
+ * Copyright (c) 2018-2019, Max Roncace <mproncace@gmail.com>
+ *
+ * The MIT License
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package net.caseif.jnes.emulation.cpu;
+
+import net.caseif.jnes.model.cpu.Instruction;
+import net.caseif.jnes.model.cpu.Mnemonic;
+
+import static net.caseif.jnes.util.MathHelper.unsign;
+
+import java.util.Arrays;
+
+/**
+ * Cache of pre-decoded basic blocks, keyed by the address of their first
+ * instruction.
+ *
+ * <p>A block is a straight run of instructions ending at the first control
+ * flow instruction or at the end of the page it starts in. Each entry holds
+ * the bound handler, raw operand and length of its instruction, so that
+ * executing from a cached block skips the opcode and operand fetches
+ * entirely.</p>
+ *
+ * <p>Blocks are looked up through a two-level table indexed by page and
+ * offset. Any write to a page holding cached code drops every block which
+ * may overlap it, which keeps self-modifying code and code copied into RAM
+ * correct. Internal RAM is keyed by its canonical address so that writes
+ * through any of its mirrors are seen.</p>
+ */
+final class BlockCache {
+
+    private static final int MAX_BLOCK_LENGTH = 64;
+
+    private final CpuMemory memory;
+
+    private final Block[][] pages = new Block[256][];
+    // whether each page may hold bytes belonging to a cached block
+    private final boolean[] codePages = new boolean[256];
+
+    // scratch space for decoding
+    private final byte[] opcodeBuf = new byte[MAX_BLOCK_LENGTH];
+    private final OpcodeHandler[] handlerBuf = new OpcodeHandler[MAX_BLOCK_LENGTH];
+    private final int[] operandBuf = new int[MAX_BLOCK_LENGTH];
+    private final byte[] lengthBuf = new byte[MAX_BLOCK_LENGTH];
+    private final byte[] cycleBuf = new byte[MAX_BLOCK_LENGTH];
+
+    BlockCache(CpuMemory memory) {
+        this.memory = memory;
+    }
+
+    /**
+     * Gets the block starting at the given address, decoding it if it is not
+     * already cached.
+     *
+     * @param pc The address of the first instruction of the block
+     * @return The block, or {@code null} if code at the given address is not
+     *     cacheable
+     */
+    Block get(int pc) {
+        if (!isCacheable(pc)) {
+            return null;
+        }
+
+        int key = canonicalize(pc);
+
+        Block[] page = pages[key >>> 8];
+        if (page == null) {
+            page = new Block[256];
+            pages[key >>> 8] = page;
+        }
+
+        Block block = page[key & 0xFF];
+        if (block == null) {
+            block = decode(pc);
+            page[key & 0xFF] = block;
+        }
+        return block;
+    }
+
+    /**
+     * Notifies the cache that the given address has been written to.
+     *
+     * @param addr The address written to
+     */
+    void onWrite(int addr) {
+        int page = canonicalize(addr) >>> 8;
+        if (codePages[page]) {
+            invalidatePage(page);
+        }
+    }
+
+    /**
+     * Drops all cached blocks overlapping the given address range, e.g. after
+     * a bank switch.
+     *
+     * @param start The first address of the range
+     * @param end The last address of the range (inclusive)
+     */
+    void invalidateRange(int start, int end) {
+        for (int page = start >>> 8; page <= end >>> 8; page++) {
+            // pages without code have no blocks which could overlap them
+            if (codePages[page]) {
+                invalidatePage(page);
+            }
+        }
+    }
+
+    /**
+     * Drops all cached blocks.
+     */
+    void invalidateAll() {
+        invalidateRange(0x0000, 0xFFFF);
+    }
+
+    private void invalidatePage(int page) {
+        dropBlocks(page);
+        // blocks starting near the end of the previous page may run into
+        // this one
+        dropBlocks(page < 0x08 ? (page - 1) & 0x07 : page - 1);
+        codePages[page] = false;
+    }
+
+    private void dropBlocks(int page) {
+        Block[] blocks = pages[page];
+        if (blocks == null) {
+            return;
+        }
+
+        for (int i = 0; i < blocks.length; i++) {
+            if (blocks[i] != null) {
+                blocks[i].valid = false;
+                blocks[i] = null;
+            }
+        }
+    }
+
+    private Block decode(int startPc) {
+        int pc = startPc;
+        int size = 0;
+
+        while (size < MAX_BLOCK_LENGTH) {
+            byte opcode = memory.read(pc);
+            int length = OpcodeTable.getLength(unsign(opcode));
+
+            // don't decode operands out of an uncacheable region, since reading
+            // it may have side effects
+            if (!isCacheable(pc + length - 1)) {
+                break;
+            }
+
+            int operand = 0;
+            if (length == 2) {
+                operand = unsign(memory.read(pc + 1));
+            } else if (length == 3) {
+                operand = unsign(memory.read(pc + 1)) | (unsign(memory.read(pc + 2)) << 8);
+            }
+
+            opcodeBuf[size] = opcode;
+            handlerBuf[size] = OpcodeTable.get(unsign(opcode));
+            operandBuf[size] = operand;
+            lengthBuf[size] = (byte) length;
+            cycleBuf[size] = (byte) Instruction.getBaseCycles(opcode);
+            size++;
+
+            markPage(pc);
+            markPage(pc + length - 1);
+
+            pc += length;
+
+            if (endsBlock(Instruction.fromOpcode(opcode)) || (pc >>> 8) != (startPc >>> 8)) {
+                break;
+            }
+        }
+
+        if (size == 0) {
+            return null;
+        }
+
+        return new Block(startPc, Arrays.copyOf(opcodeBuf, size), Arrays.copyOf(handlerBuf, size),
+                Arrays.copyOf(operandBuf, size), Arrays.copyOf(lengthBuf, size), Arrays.copyOf(cycleBuf, size));
+    }
+
+    private void markPage(int addr) {
+        codePages[canonicalize(addr) >>> 8] = true;
+    }
+
+    private static boolean endsBlock(Instruction instr) {
+        Mnemonic mnemonic = instr.getMnemonic();
+        switch (mnemonic.getType()) {
+            case BRANCH:
+            case JUMP:
+                return true;
+            default:
+                return mnemonic == Mnemonic.RTS || mnemonic == Mnemonic.RTI
+                        || mnemonic == Mnemonic.BRK || mnemonic == Mnemonic.KIL;
+        }
+    }
+
+    // only internal RAM, PRG RAM and PRG ROM may hold cached code
+    private static boolean isCacheable(int addr) {
+        return addr < 0x2000 || (addr >= 0x6000 && addr <= 0xFFFF);
+    }
+
+    private static int canonicalize(int addr) {
+        return addr < 0x2000 ? addr & 0x7FF : addr;
+    }
+
+    /**
+     * A run of pre-decoded instructions.
+     */
+    static final class Block {
+
+        // address the block was decoded from
+        final int startPc;
+        final byte[] opcodes;
+        final OpcodeHandler[] handlers;
+        final int[] operands;
+        final byte[] lengths;
+        // base cycle cost of each instruction, excluding penalties
+        final byte[] baseCycles;
+        final int size;
+        final int staticCycles;
+
+        // cleared when the memory backing the block is written to
+        boolean valid = true;
+
+        // number of times the block has been entered, and its compiled form
+        // once it is hot enough
+        int hits;
+        BlockCompiler.CompiledBlock compiled;
+
+        Block(int startPc, byte[] opcodes, OpcodeHandler[] handlers, int[] operands, byte[] lengths,
+                byte[] baseCycles) {
+            this.startPc = startPc;
+            this.opcodes = opcodes;
+            this.handlers = handlers;
+            this.operands = operands;
+            this.lengths = lengths;
+            this.baseCycles = baseCycles;
+            this.size = handlers.length;
+
+            int total = 0;
+            for (byte c : baseCycles) {
+                total += c;
+            }
+            this.staticCycles = total;
+        }
+
+    }
+
+}
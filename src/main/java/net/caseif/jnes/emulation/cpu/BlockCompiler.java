@@ -0,0 +1,250 @@
+/*
+ * This file is a part of jNES.
+ * Copyright (c) 2018-2019, Max Roncace <mproncace@gmail.com>
+ *
+ * The MIT License
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package net.caseif.jnes.emulation.cpu;
+
+import net.caseif.jnes.emulation.cpu.OpcodeTable.OperandResolver;
+import net.caseif.jnes.emulation.cpu.OpcodeTable.Operation;
+import net.caseif.jnes.model.cpu.Instruction;
+
+import static net.caseif.jnes.util.MathHelper.unsign;
+
+/**
+ * Compiles hot basic blocks into chains of specialized steps which execute
+ * the whole block in a single call.
+ *
+ * <p>Each step has its operand, effective address and cycle cost folded in
+ * at compile time. Instructions which can only touch internal RAM access the
+ * RAM array directly and skip program counter bookkeeping altogether, since
+ * they cannot have side effects outside of the CPU. Everything else falls
+ * back to the instruction's regular handler, after which the block bails
+ * out if control was diverted (e.g. by an NMI raised through a PPU register
+ * write) or if the block was invalidated.</p>
+ *
+ * <p>Since the interpreter services interrupts and PPU events between
+ * instructions, a block is only entered if none can occur within it, and
+ * it's left after any handler which may have changed that.</p>
+ */
+final class BlockCompiler {
+
+    // most cycles an instruction may take beyond its base cost, for a taken
+    // branch crossing a page
+    private static final int MAX_EXTRA_CYCLES = 2;
+
+    private BlockCompiler() {
+    }
+
+    /**
+     * Compiles the given block.
+     *
+     * @param block The block to compile
+     * @param ram The internal RAM array of the CPU executing the block
+     * @return The compiled block
+     */
+    static CompiledBlock compile(BlockCache.Block block, byte[] ram) {
+        Step[] steps = new Step[block.size];
+        boolean[] checkpoints = new boolean[block.size];
+        int[] remainingCycles = new int[block.size];
+
+        int pc = block.startPc;
+        for (int i = 0; i < block.size; i++) {
+            int next = pc + block.lengths[i];
+
+            Step step = null;
+            // the last instruction always goes through its handler so that the
+            // program counter is left correct
+            if (i < block.size - 1) {
+                step = specialize(Instruction.fromOpcode(block.opcodes[i]), block.operands[i],
+                        block.baseCycles[i], ram);
+            }
+            if (step == null) {
+                step = generic(block, i, pc, next & 0xFFFF);
+                checkpoints[i] = true;
+            }
+
+            steps[i] = step;
+            pc = next;
+        }
+
+        int maxCycles = 0;
+        for (int i = block.size - 1; i >= 0; i--) {
+            remainingCycles[i] = maxCycles;
+            maxCycles += block.baseCycles[i] + MAX_EXTRA_CYCLES;
+        }
+
+        return new CompiledBlock(steps, checkpoints, remainingCycles, maxCycles);
+    }
+
+    private static Step specialize(Instruction instr, int operand, int cycles, byte[] ram) {
+        Operation op = OpcodeTable.operationFor(instr);
+        boolean readsMemory = OpcodeTable.readsMemory(instr);
+
+        switch (instr.getAddressingMode()) {
+            case IMP:
+                return cpu -> {
+                    op.execute(cpu);
+                    cpu.cycles += cycles;
+                    return true;
+                };
+            case IMM: {
+                byte value = (byte) operand;
+                return cpu -> {
+                    cpu.m = value;
+                    op.execute(cpu);
+                    cpu.cycles += cycles;
+                    return true;
+                };
+            }
+            case ZRP:
+            case ABS: {
+                // anything outside of internal RAM may be memory-mapped I/O
+                if (operand >= 0x2000) {
+                    return null;
+                }
+
+                short addr = (short) operand;
+                int index = operand & 0x7FF;
+                if (readsMemory) {
+                    return cpu -> {
+                        cpu.addr = addr;
+                        cpu.m = ram[index];
+                        op.execute(cpu);
+                        cpu.cycles += cycles;
+                        return true;
+                    };
+                } else {
+                    return cpu -> {
+                        cpu.addr = addr;
+                        op.execute(cpu);
+                        cpu.cycles += cycles;
+                        return true;
+                    };
+                }
+            }
+            case ZPX:
+            case ZPY: {
+                // zero page indexing always wraps within the zero page
+                OperandResolver resolver = OpcodeTable.resolverFor(instr.getAddressingMode());
+                return cpu -> {
+                    cpu.operand = operand;
+                    resolver.resolve(cpu);
+                    if (readsMemory) {
+                        cpu.m = ram[unsign(cpu.addr)];
+                    }
+                    op.execute(cpu);
+                    cpu.cycles += cycles;
+                    return true;
+                };
+            }
+            default:
+                return null;
+        }
+    }
+
+    private static Step generic(BlockCache.Block block, int index, int pc, int next) {
+        OpcodeHandler handler = block.handlers[index];
+        int operand = block.operands[index];
+        int opcode = unsign(block.opcodes[index]);
+        return cpu -> {
+            cpu.instrOpcode = opcode;
+            cpu.instrPc = pc;
+            cpu.regs.setPc((short) next);
+            cpu.operand = operand;
+            handler.execute(cpu);
+            return cpu.regs.getPc() == next && block.valid;
+        };
+    }
+
+    /**
+     * A single compiled instruction.
+     */
+    @FunctionalInterface
+    interface Step {
+
+        /**
+         * Executes the instruction.
+         *
+         * @param cpu The CPU to execute the instruction on
+         * @return Whether execution may continue with the next step
+         */
+        boolean execute(CpuInterpreter cpu);
+
+    }
+
+    /**
+     * A compiled basic block.
+     */
+    static final class CompiledBlock {
+
+        private final Step[] steps;
+        // whether each step goes through its instruction's handler, and so
+        // may have effects outside of the CPU
+        private final boolean[] checkpoints;
+        // most cycles the steps after each step may take
+        private final int[] remainingCycles;
+        private final int maxCycles;
+
+        private CompiledBlock(Step[] steps, boolean[] checkpoints, int[] remainingCycles, int maxCycles) {
+            this.steps = steps;
+            this.checkpoints = checkpoints;
+            this.remainingCycles = remainingCycles;
+            this.maxCycles = maxCycles;
+        }
+
+        /**
+         * Gets the most cycles the block may take.
+         *
+         * @return The most cycles the block may take
+         */
+        int getMaxCycles() {
+            return maxCycles;
+        }
+
+        /**
+         * Executes the block from its first instruction.
+         *
+         * @param cpu The CPU to execute the block on
+         */
+        void execute(CpuInterpreter cpu) {
+            for (int i = 0; i < steps.length; i++) {
+                if (checkpoints[i] && i > 0) {
+                    cpu.markInstructionBoundary();
+                }
+
+                if (!steps[i].execute(cpu)) {
+                    return;
+                }
+
+                // the handler may have raised an interrupt or moved the PPU's
+                // next event, and the program counter is correct after it
+                if (checkpoints[i] && i < steps.length - 1 && !cpu.canRunCompiled(remainingCycles[i])) {
+                    return;
+                }
+            }
+        }
+
+    }
+
+}
@@ -25,21 +25,19 @@
 
 package net.caseif.jnes.emulation.cpu;
 
+import net.caseif.jnes.emulation.cpu.trace.ExecutionTracer;
+import net.caseif.jnes.emulation.cpu.trace.TraceEntry;
+import net.caseif.jnes.emulation.mapper.Mapper;
 import net.caseif.jnes.emulation.ppu.PpuEmulator;
 import net.caseif.jnes.model.Cartridge;
-import net.caseif.jnes.model.cpu.AddressingMode;
+import net.caseif.jnes.model.cpu.HaltReason;
 import net.caseif.jnes.model.cpu.Instruction;
 import net.caseif.jnes.model.cpu.InterruptType;
-import net.caseif.jnes.util.exception.CpuHaltedException;
-import net.caseif.jnes.util.tuple.Pair;
 
-import static net.caseif.jnes.emulation.cpu.CpuRegisters.Register.*;
 import static net.caseif.jnes.util.MathHelper.unsign;
 
 public class CpuInterpreter {
 
-    private final Cartridge cart;
-
     private final CpuStatus status = new CpuStatus();
     final CpuRegisters regs = new CpuRegisters();
 
@@ -47,377 +45,434 @@ public class CpuInterpreter {
 
     private final PpuEmulator ppu;
 
-    public CpuInterpreter(Cartridge cart) {
-        this.cart = cart;
-
-        this.memory = new CpuMemory(cart, this);
-        this.ppu = new PpuEmulator(this);
-    }
+    private final Mapper mapper;
 
-    public PpuEmulator getPpu() {
-        return ppu;
-    }
-
-    public CpuStatus getStatus() {
-        return status;
-    }
+    /**
+     * The source bit with which mappers assert the IRQ line.
+     */
+    public static final int IRQ_SOURCE_MAPPER = 1;
 
-    public void tick() throws CpuHaltedException {
-        Instruction instr = null;
-        try {
-            instr = Instruction.fromOpcode(readPrg());
-            System.out.println("Executing instruction " + instr.getMnemonic().name()
-                    + " @ $" + String.format("%02X", regs.getPc() - 1));
-            executeInstruction(instr);
-        } catch (CpuHaltedException ex) {
-            throw ex;
-        } catch (Throwable t) {
-            throw new RuntimeException("Exception occurred while executing instruction "
-                    + (instr != null ? instr : "(unknown)")
-                    + " @ $" + String.format("%04X", regs.getPc() - 1), t);
-        }
-    }
+    // master clock cycles per CPU cycle
+    static final int MASTER_CYCLES_PER_CYCLE = 12;
 
-    private void executeInstruction(Instruction instr) throws CpuHaltedException {
-        Pair<Byte, Short> mp = getM(instr.getAddressingMode());
-        byte m = mp.first();
-        short addr = mp.second();
+    // number of times a block must be entered before it is compiled
+    private static final int COMPILE_THRESHOLD = 32;
 
-        switch (instr.getMnemonic()) {
-            // storage
-            case LDA:
-                regs.setAcc(m);
+    private ExecutionTracer tracer = ExecutionTracer.DISABLED;
+    private boolean tracing = false;
 
-                setZeroAndNegFlags(A);
+    private HaltReason haltReason = HaltReason.NONE;
 
-                break;
-            case LDX:
-                regs.setX(m);
+    // the page copied by the last OAM DMA, and whether the CPU has yet to be
+    // stalled for it
+    private final byte[] dmaBuffer = new byte[256];
+    private boolean dmaPending = false;
 
-                setZeroAndNegFlags(X);
+    // sources currently asserting the IRQ line, one bit each
+    private int irqSources = 0;
 
-                break;
-            case LDY:
-                regs.setY(m);
+    // whether the PPU is run lazily rather than after every instruction
+    private boolean ppuCatchUp = true;
 
-                setZeroAndNegFlags(Y);
+    private boolean compilationEnabled = false;
+    // whether blocks are currently being compiled, which is never the case
+    // while tracing
+    private boolean compiling = false;
 
-                break;
-            case STA:
-                memory.write(addr, (byte) regs.getAcc());
-                break;
-            case STX:
-                memory.write(addr, (byte) regs.getX());
-                break;
-            case STY:
-                memory.write(addr, (byte) regs.getY());
-                break;
-            case TAX:
-                regs.setX((byte) regs.getAcc());
+    // total CPU cycles elapsed, and the value at the last instruction
+    // boundary, which the PPU is synced to
+    long cycles = 0;
+    private long reportedCycles = 0;
 
-                setZeroAndNegFlags(X);
+    // opcode and address of the instruction currently being executed, as
+    // recorded when it was fetched
+    int instrOpcode;
+    int instrPc;
 
-                break;
-            case TAY:
-                regs.setY((byte) regs.getAcc());
+    // operand of the instruction currently being executed - value M, along
+    // with the address it was read from (if applicable)
+    byte m;
+    short addr;
+    // whether indexing the effective address crossed a page boundary
+    boolean pageCrossed;
+    // raw operand bytes of the current instruction, little-endian
+    int operand;
 
-                setZeroAndNegFlags(Y);
+    final BlockCache blockCache;
+    // cursor into the block currently being executed
+    private BlockCache.Block block;
+    private int blockIndex;
+    private int blockNextPc = -1;
 
-                break;
-            case TSX:
-                regs.setX((byte) regs.getSp());
+    public CpuInterpreter(Cartridge cart) {
+        this.memory = new CpuMemory(this);
+        this.blockCache = new BlockCache(memory);
+        this.ppu = new PpuEmulator(this, cart);
 
-                setZeroAndNegFlags(X);
+        this.mapper = Mapper.forCartridge(cart);
+        mapper.attach(this);
+    }
 
-                break;
-            case TXA:
-                regs.setAcc((byte) regs.getX());
+    public PpuEmulator getPpu() {
+        return ppu;
+    }
 
-                setZeroAndNegFlags(A);
+    public CpuMemory getMemory() {
+        return memory;
+    }
 
-                break;
-            case TYA:
-                regs.setAcc((byte) regs.getY());
+    public Mapper getMapper() {
+        return mapper;
+    }
 
-                setZeroAndNegFlags(A);
+    public CpuStatus getStatus() {
+        return status;
+    }
 
-                break;
-            case TXS:
-                regs.setSp((byte) regs.getX());
-                break;
-            // math
-            case ADC: {
-                byte acc0 = (byte) regs.getAcc();
+    /**
+     * Gets the total number of CPU cycles elapsed since power-on.
+     *
+     * @return The running cycle count
+     */
+    public long getCycles() {
+        return cycles;
+    }
 
-                int c = status.getFlag(CpuStatus.Flag.CARRY) ? 1 : 0;
+    public ExecutionTracer getTracer() {
+        return tracer;
+    }
 
-                regs.setAcc((byte) (acc0 + m + c));
+    /**
+     * Sets the tracer which will receive a record of each instruction
+     * executed.
+     *
+     * @param tracer The new tracer, or {@link ExecutionTracer#DISABLED} to
+     *     disable tracing
+     */
+    public void setTracer(ExecutionTracer tracer) {
+        this.tracer = tracer;
+        this.tracing = tracer != ExecutionTracer.DISABLED;
+        this.compiling = compilationEnabled && !tracing;
+    }
 
-                setZeroAndNegFlags(A);
+    public boolean isPpuCatchUpEnabled() {
+        return ppuCatchUp;
+    }
 
-                byte a7 = (byte) (acc0 >> 7);
-                byte m7 = (byte) (m >> 7);
+    /**
+     * Sets whether the PPU is scheduled lazily.
+     *
+     * <p>In lockstep mode, the PPU is run forward after every instruction.
+     * In catch-up mode, it is only run forward when the CPU accesses one of
+     * its registers or when it reaches the PPU's next event (see
+     * {@link PpuEmulator#getNextEvent()}), which is much cheaper and produces
+     * identical results.</p>
+     *
+     * @param enabled Whether catch-up mode should be enabled
+     */
+    public void setPpuCatchUpEnabled(boolean enabled) {
+        syncPpu();
+        this.ppuCatchUp = enabled;
+    }
 
-                // unsigned overflow will occur if at least two among the most significant operand bits and the carry bit are set
-                boolean carry = ((a7 & m7) | (a7 & c) | (m7 & c)) != 0;
-                if (carry) {
-                    status.setFlag(CpuStatus.Flag.CARRY);
-                } else {
-                    status.clearFlag(CpuStatus.Flag.CARRY);
-                }
+    /**
+     * Runs the PPU forward to the current instruction boundary, if it is
+     * being scheduled lazily.
+     */
+    public void syncPpu() {
+        if (ppuCatchUp) {
+            // the PPU catches up to the end of the last tick, as it would in
+            // lockstep mode
+            ppu.catchUp(reportedCycles * MASTER_CYCLES_PER_CYCLE);
+        }
+    }
 
-                // signed overflow will occur if the sign of both inputs if different from the sign of the result
-                boolean overflow = ((acc0 ^ regs.getAcc()) & (m ^ regs.getAcc()) & 0x80) != 0;
-                if (overflow) {
-                    status.setFlag(CpuStatus.Flag.OVERFLOW);
-                } else {
-                    status.clearFlag(CpuStatus.Flag.OVERFLOW);
-                }
-                break;
-            }
-            case SBC: {
-                byte acc0 = (byte) regs.getAcc();
+    public boolean isCompilationEnabled() {
+        return compilationEnabled;
+    }
 
-                byte notCarry = status.getFlag(CpuStatus.Flag.CARRY) ? (byte) 0 : (byte) 1;
+    /**
+     * Sets whether hot blocks of code in PRG ROM will be compiled and
+     * executed as a unit.
+     *
+     * <p>While enabled, a single {@link #tick()} may execute an entire block.
+     * A block is only run as a unit if no interrupt is pending and the PPU's
+     * next event can't fall inside it, and is left early if either changes
+     * partway through, so execution matches the interpreter. Compiled blocks
+     * are therefore only used while the PPU is
+     * {@linkplain #setPpuCatchUpEnabled(boolean) caught up lazily}. Code in
+     * RAM is always interpreted, as is all code while a tracer is
+     * installed.</p>
+     *
+     * @param enabled Whether compilation should be enabled
+     */
+    public void setCompilationEnabled(boolean enabled) {
+        this.compilationEnabled = enabled;
+        this.compiling = enabled && !tracing;
+    }
 
-                regs.setAcc((byte) (acc0 - m - notCarry));
+    /**
+     * Gets the reason the CPU halted.
+     *
+     * @return The reason the CPU halted, or {@link HaltReason#NONE} if it
+     *     has not
+     */
+    public HaltReason getHaltReason() {
+        return haltReason;
+    }
 
-                setZeroAndNegFlags(A);
+    public boolean isHalted() {
+        return haltReason != HaltReason.NONE;
+    }
 
-                boolean borrow = (acc0 >> 7) + ((255 - m) >> 7) + (((regs.getAcc() & 0x40) & ((255 - m) & 0x40)) >> 6) <= 1;
-                if (borrow) {
-                    status.setFlag(CpuStatus.Flag.CARRY);
-                } else {
-                    status.clearFlag(CpuStatus.Flag.CARRY);
-                }
+    /**
+     * Runs the CPU and PPU until at least the given number of CPU cycles
+     * have elapsed or the CPU halts.
+     *
+     * @param budget The number of CPU cycles to run for
+     * @return The result of the run
+     */
+    public RunResult runCycles(long budget) {
+        long startCycles = cycles;
+        long target = cycles + budget;
+        long startFrame = ppu.getFrameCount();
 
-                boolean overflow = ((acc0 ^ regs.getAcc()) & ((255 - m) ^ regs.getAcc()) & 0x80) != 0;
-                if (overflow) {
-                    status.setFlag(CpuStatus.Flag.OVERFLOW);
-                } else {
-                    status.clearFlag(CpuStatus.Flag.OVERFLOW);
-                }
-                break;
+        try {
+            while (cycles < target && haltReason == HaltReason.NONE) {
+                runInstruction();
             }
-            case DEC:
-                short decRes = (short) (m - 1);
-
-                memory.write(addr, (byte) decRes);
-
-                setZeroAndNegFlags(decRes);
 
-                break;
-            case DEX:
-                regs.setX((byte) (regs.getX() - 1));
+            syncPpu();
+        } catch (Throwable t) {
+            throw executionFailure(t);
+        }
 
-                setZeroAndNegFlags(X);
+        return new RunResult(cycles - startCycles, (int) (ppu.getFrameCount() - startFrame), haltReason);
+    }
 
-                break;
-            case DEY:
-                regs.setY((byte) (regs.getY() - 1));
+    /**
+     * Runs the CPU and PPU until the PPU completes the current frame or the
+     * CPU halts.
+     *
+     * @return The result of the run
+     */
+    public RunResult runUntilFrameComplete() {
+        long startCycles = cycles;
+        long startFrame = ppu.getFrameCount();
 
-                setZeroAndNegFlags(Y);
+        try {
+            while (ppu.getFrameCount() == startFrame && haltReason == HaltReason.NONE) {
+                runInstruction();
+            }
 
-                break;
-            case INC:
-                short incRes = (short) (m + 1);
+            syncPpu();
+        } catch (Throwable t) {
+            throw executionFailure(t);
+        }
 
-                memory.write(addr, (byte) incRes);
+        return new RunResult(cycles - startCycles, (int) (ppu.getFrameCount() - startFrame), haltReason);
+    }
 
-                setZeroAndNegFlags(incRes);
+    /**
+     * Executes a single instruction, or a single compiled block if
+     * compilation is enabled.
+     *
+     * <p>The PPU is run alongside the CPU according to the current
+     * scheduling mode; see {@link #setPpuCatchUpEnabled(boolean)}. Once the
+     * CPU has halted, this does nothing; callers should check
+     * {@link #isHalted()} after each tick.</p>
+     *
+     * @return The number of CPU cycles elapsed since the previous tick,
+     *     including any interrupts serviced in between
+     */
+    public int tick() {
+        try {
+            return runInstruction();
+        } catch (Throwable t) {
+            throw executionFailure(t);
+        }
+    }
 
-                break;
-            case INX:
-                regs.setX((byte) (regs.getX() + 1));
+    private int runInstruction() {
+        if (haltReason != HaltReason.NONE) {
+            return 0;
+        }
 
-                setZeroAndNegFlags(X);
+        long tickStart = reportedCycles;
 
-                break;
-            case INY:
-                regs.setY((byte) (regs.getY() + 1));
+        // the IRQ line is level-triggered, so it's taken at every instruction
+        // boundary for as long as it's asserted and not masked
+        if (irqSources != 0 && !status.getFlag(CpuStatus.Flag.INTERRUPT_DISABLE)) {
+            issueInterrupt(InterruptType.IRQ);
+        }
 
-                setZeroAndNegFlags(Y);
+        if (tracing) {
+            tracer.trace(TraceEntry.pack(regs.getPc(), peekPrg(), regs.getAcc(), regs.getX(), regs.getY(),
+                    regs.getSp(), status.serialize()));
+        }
 
-                break;
-            // logic
-            case AND:
-                regs.setAcc((byte) (regs.getAcc() & m));
+        executeNext();
 
-                setZeroAndNegFlags(regs.getAcc());
+        if (dmaPending) {
+            // the CPU is suspended while the DMA runs, plus a cycle to align to
+            // an even cycle if necessary
+            cycles += 513 + (cycles & 1);
+            dmaPending = false;
+        }
 
-                break;
-            case ASL:
-                shift(instr, false, false, m, addr);
-                break;
-            case LSR:
-                shift(instr, true, false, m, addr);
-                break;
-            case EOR:
-                regs.setAcc((byte) (regs.getAcc() ^ m));
+        int elapsed = (int) (cycles - tickStart);
+        reportedCycles = cycles;
 
-                setZeroAndNegFlags(A);
+        if (!ppuCatchUp) {
+            // the PPU runs 3 dots per CPU cycle
+            for (int i = 0; i < elapsed * 3; i++) {
+                ppu.tick();
+            }
+        } else if (reportedCycles * MASTER_CYCLES_PER_CYCLE > ppu.getNextEventTime()) {
+            // let the PPU reach the event which has passed, so that e.g. an
+            // NMI is taken before the next instruction just as in lockstep mode
+            syncPpu();
+        }
 
-                break;
-            case ORA:
-                regs.setAcc((byte) (regs.getAcc() | m));
+        return elapsed;
+    }
 
-                setZeroAndNegFlags(A);
+    private RuntimeException executionFailure(Throwable t) {
+        tracer.dump(System.err);
 
-                break;
-            case ROL:
-                shift(instr, false, true, m, addr);
+        return new RuntimeException("Exception occurred while executing instruction "
+                + Instruction.fromOpcode((byte) instrOpcode)
+                + " @ $" + String.format("%04X", instrPc), t);
+    }
 
-                setZeroAndNegFlags(A);
+    /**
+     * Executes the next instruction, taking it from the pre-decoded block
+     * cache where possible and otherwise fetching and decoding it from
+     * memory.
+     *
+     */
+    void executeNext() {
+        int pc = regs.getPc();
+
+        BlockCache.Block block = this.block;
+        // continue through the current block unless control left it or it
+        // was invalidated by a write
+        if (block == null || pc != blockNextPc || blockIndex >= block.size || !block.valid) {
+            block = blockCache.get(pc);
+            blockIndex = 0;
+            this.block = block;
+
+            if (block != null && compiling && block.startPc >= 0x8000) {
+                if (block.compiled == null && ++block.hits >= COMPILE_THRESHOLD) {
+                    block.compiled = BlockCompiler.compile(block, memory.getRam());
+                }
 
-                break;
-            case ROR:
-                shift(instr, true, true, m, addr);
+                if (block.compiled != null && canRunCompiled(block.compiled.getMaxCycles())) {
+                    this.block = null;
+                    instrOpcode = unsign(block.opcodes[0]);
+                    instrPc = pc;
+                    block.compiled.execute(this);
+                    checkHalted();
+                    return;
+                }
+            }
+        }
 
-                setZeroAndNegFlags(A);
+        if (block != null) {
+            int i = blockIndex++;
+            instrOpcode = unsign(block.opcodes[i]);
+            instrPc = pc;
+            blockNextPc = pc + block.lengths[i];
+            regs.setPc((short) blockNextPc);
+            operand = block.operands[i];
+            block.handlers[i].execute(this);
+        } else {
+            executeUncached();
+        }
 
-                break;
-            // branching
-            case BCC:
-                if (!status.getFlag(CpuStatus.Flag.CARRY)) {
-                    branch(m);
-                }
-                break;
-            case BCS:
-                if (status.getFlag(CpuStatus.Flag.CARRY)) {
-                    branch(m);
-                }
-                break;
-            case BNE:
-                if (!status.getFlag(CpuStatus.Flag.ZERO)) {
-                    branch(m);
-                }
-                break;
-            case BEQ:
-                if (status.getFlag(CpuStatus.Flag.ZERO)) {
-                    branch(m);
-                }
-                break;
-            case BPL:
-                if (!status.getFlag(CpuStatus.Flag.NEGATIVE)) {
-                    branch(m);
-                }
-                break;
-            case BMI:
-                if (status.getFlag(CpuStatus.Flag.NEGATIVE)) {
-                    branch(m);
-                }
-                break;
-            case BVC:
-                if (!status.getFlag(CpuStatus.Flag.OVERFLOW)) {
-                    branch(m);
-                }
-                break;
-            case BVS:
-                if (status.getFlag(CpuStatus.Flag.OVERFLOW)) {
-                    branch(m);
-                }
-                break;
-            case JMP:
-                regs.setPc(addr);
-                break;
-            case JSR:
-                int pc = regs.getPc() - 1;
+        checkHalted();
+    }
 
-                memory.push(regs, (byte) (((pc >> 8) & 0xFF) )); // push MSB of PC
-                memory.push(regs, (byte) ((pc & 0xFF)));        // push LSB of PC
+    /**
+     * Gets whether compiled code taking up to the given number of cycles can
+     * run without missing anything the interpreter would handle between its
+     * instructions, i.e. a pending interrupt, a DMA stall or a PPU event.
+     *
+     * @param maxCycles The most cycles the code may take
+     * @return Whether the code can be run
+     */
+    boolean canRunCompiled(int maxCycles) {
+        return ppuCatchUp && irqSources == 0 && !dmaPending
+                && (cycles + maxCycles) * MASTER_CYCLES_PER_CYCLE <= ppu.getNextEventTime();
+    }
 
-                regs.setPc(addr);
+    /**
+     * Marks the start of an instruction within a compiled block, so that the
+     * PPU is synced to it just as if the instruction had been interpreted.
+     */
+    void markInstructionBoundary() {
+        reportedCycles = cycles;
+    }
 
-                break;
-            case RTS: {
-                byte pcl = memory.pop(regs); // pop LSB of PC
-                byte pcm = memory.pop(regs); // pop MSB of PC
+    private void checkHalted() {
+        // the mapper decides what's at the program counter, so only halt once
+        // it leaves memory altogether
+        if (!memory.isBacked(regs.getPc())) {
+            haltReason = HaltReason.PC_OUT_OF_BOUNDS;
+        }
+    }
 
-                regs.setPc((short) (((pcm << 8) | pcl) + 1));
+    /**
+     * Fetches the next instruction from memory and executes it through its
+     * pre-bound handler, bypassing the block cache.
+     *
+     */
+    void executeUncached() {
+        instrPc = regs.getPc();
+        int opcode = unsign(readPrg());
+        instrOpcode = opcode;
+        fetchOperand(OpcodeTable.getLength(opcode));
+        OpcodeTable.get(opcode).execute(this);
+    }
 
-                break;
-            }
-            // registers
-            case CLC:
-                status.clearFlag(CpuStatus.Flag.CARRY);
-                break;
-            case CLD:
-                // no-op since decimal mode is unimplemented
-                break;
-            case CLI:
-                status.clearFlag(CpuStatus.Flag.INTERRUPT_DISABLE);
-                break;
-            case CLV:
-                status.clearFlag(CpuStatus.Flag.OVERFLOW);
-                break;
-            case CMP:
-                cmp(regs.getAcc(), unsign(m));
-                break;
-            case CPX:
-                cmp(regs.getX(), unsign(m));
-                break;
-            case CPY:
-                cmp(regs.getY(), unsign(m));
-                break;
-            case SEC:
-                status.setFlag(CpuStatus.Flag.CARRY);
-                break;
-            case SED:
-                // no-op since decimal mode is unimplemented
-                break;
-            case SEI:
-                status.setFlag(CpuStatus.Flag.INTERRUPT_DISABLE);
-                break;
-            // stack
-            case PHA:
-                memory.push(regs, (byte) regs.getAcc());
-                break;
-            case PHP:
-                memory.push(regs, status.serialize());
-                break;
-            case PLA:
-                regs.setAcc(memory.pop(regs));
-
-                setZeroAndNegFlags(A);
-
-                break;
-            case PLP:
-                status.deserialize(memory.pop(regs));
-                break;
-            // system
-            case BRK: {
-                issueInterrupt(InterruptType.BRK);
-                break;
-            }
-            case RTI: {
-                status.deserialize(memory.pop(regs)); // pop flags
+    /**
+     * Performs an OAM DMA, copying a page of memory to the PPU's OAM.
+     *
+     * <p>The copy happens in bulk, and the CPU is stalled for the duration of
+     * the transfer once the current instruction completes.</p>
+     *
+     * @param page The page to copy (the high byte of its address)
+     */
+    void performOamDma(int page) {
+        syncPpu();
 
-                // ORDER IS IMPORTANT
-                short newPc = (short) (memory.pop(regs) | (memory.pop(regs) << 8));
+        memory.readPage(page, dmaBuffer);
+        ppu.writeOamDma(dmaBuffer);
 
-                regs.setPc(newPc);
+        dmaPending = true;
+    }
 
-                break;
-            }
-            case NOP:
-                // no-op
-                break;
-            case KIL:
-                throw new CpuHaltedException();
-            default:
-                //TODO
-                // no-op
-                for (int i = 0; i < instr.getLength() - 1; i++) {
-                    readPrg();
-                }
-                break;
-            //default:
-            //    throw new UnsupportedOperationException("Unsupported instruction " + instr.getOpcode().name());
+    /**
+     * Asserts or releases the IRQ line on behalf of a source.
+     *
+     * <p>The line is held for as long as any source asserts it, and an IRQ is
+     * taken at each instruction boundary while it is held and interrupts are
+     * not disabled. Sources must release the line once acknowledged.</p>
+     *
+     * @param source The bit identifying the source, e.g.
+     *     {@link #IRQ_SOURCE_MAPPER}
+     * @param asserted Whether the source is asserting the line
+     */
+    public void setIrqLine(int source, boolean asserted) {
+        if (asserted) {
+            irqSources |= source;
+        } else {
+            irqSources &= ~source;
         }
+    }
 
-        if (regs.getPc() - 0x8000 >= cart.getPrgRom().length) {
-            throw new CpuHaltedException();
-        }
+    public boolean isIrqLineAsserted() {
+        return irqSources != 0;
     }
 
     public void issueInterrupt(InterruptType type) {
@@ -447,71 +502,195 @@ public class CpuInterpreter {
         }
 
         // little-Endian, so the LSB comes first
-        short vector = (short) (memory.read(type.getVectorLocation())
+        short vector = (short) (unsign(memory.read(type.getVectorLocation()))
                 | (unsign(memory.read(type.getVectorLocation() + 1)) << 8));
 
         // set the PC
         regs.setPc(vector);
+
+        // BRK's cycles are accounted for by the instruction itself
+        if (type != InterruptType.BRK) {
+            cycles += 7;
+        }
     }
 
-    private void setZeroAndNegFlags(CpuRegisters.Register reg) {
-        setZeroAndNegFlags(getVal(reg));
+    // storage
+
+    void lda(byte m) {
+        regs.setAcc(m);
+
+        status.setZeroAndNeg(regs.getAcc());
     }
 
-    private void setZeroAndNegFlags(short val) {
-        setZeroFlag(val);
-        setNegFlag(val);
+    void ldx(byte m) {
+        regs.setX(m);
+
+        status.setZeroAndNeg(regs.getX());
     }
 
-    private void setZeroFlag(short res) {
-        if (res == 0) {
-            status.setFlag(CpuStatus.Flag.ZERO);
-        } else {
-            status.clearFlag(CpuStatus.Flag.ZERO);
-        }
+    void ldy(byte m) {
+        regs.setY(m);
+
+        status.setZeroAndNeg(regs.getY());
     }
 
-    private void setNegFlag(short res) {
-        if ((res & 0x80) != 0) {
-            status.setFlag(CpuStatus.Flag.NEGATIVE);
-        } else {
-            status.clearFlag(CpuStatus.Flag.NEGATIVE);
-        }
+    void sta(short addr) {
+        memory.write(addr, (byte) regs.getAcc());
     }
 
-    private short getVal(CpuRegisters.Register reg) throws IllegalArgumentException {
-        switch (reg) {
-            case A:
-                return regs.getAcc();
-            case X:
-                return regs.getX();
-            case Y:
-                return regs.getY();
-            default:
-                throw new IllegalArgumentException("Invalid register " + reg.name());
-        }
+    void stx(short addr) {
+        memory.write(addr, (byte) regs.getX());
     }
 
-    private void cmp(short reg, short m) {
-        if (reg >= 0x80) {
-            status.setFlag(CpuStatus.Flag.NEGATIVE);
-        }
+    void sty(short addr) {
+        memory.write(addr, (byte) regs.getY());
+    }
 
-        if (reg >= m) {
-            status.setFlag(CpuStatus.Flag.CARRY);
-            if (reg == m) {
-                status.setFlag(CpuStatus.Flag.ZERO);
-            } else {
-                status.clearFlag(CpuStatus.Flag.ZERO);
-            }
-        } else {
-            status.clearFlag(CpuStatus.Flag.CARRY);
-        }
+    void tax() {
+        regs.setX((byte) regs.getAcc());
+
+        status.setZeroAndNeg(regs.getX());
+    }
+
+    void tay() {
+        regs.setY((byte) regs.getAcc());
+
+        status.setZeroAndNeg(regs.getY());
     }
 
-    private void shift(Instruction instr, boolean right, boolean rotate, byte m, short addr) {
+    void tsx() {
+        regs.setX((byte) regs.getSp());
+
+        status.setZeroAndNeg(regs.getX());
+    }
+
+    void txa() {
+        regs.setAcc((byte) regs.getX());
+
+        status.setZeroAndNeg(regs.getAcc());
+    }
+
+    void tya() {
+        regs.setAcc((byte) regs.getY());
+
+        status.setZeroAndNeg(regs.getAcc());
+    }
+
+    void txs() {
+        regs.setSp((byte) regs.getX());
+    }
+
+    // math
+
+    void adc(byte m) {
+        byte acc0 = (byte) regs.getAcc();
+
+        int c = status.getFlag(CpuStatus.Flag.CARRY) ? 1 : 0;
+
+        regs.setAcc((byte) (acc0 + m + c));
+
+        status.setZeroAndNeg(regs.getAcc());
+
+        byte a7 = (byte) (acc0 >> 7);
+        byte m7 = (byte) (m >> 7);
+
+        // unsigned overflow will occur if at least two among the most significant operand bits and the carry bit are set
+        boolean carry = ((a7 & m7) | (a7 & c) | (m7 & c)) != 0;
+        status.setFlag(CpuStatus.Flag.CARRY, carry);
+
+        // signed overflow will occur if the sign of both inputs if different from the sign of the result
+        boolean overflow = ((acc0 ^ regs.getAcc()) & (m ^ regs.getAcc()) & 0x80) != 0;
+        status.setFlag(CpuStatus.Flag.OVERFLOW, overflow);
+    }
+
+    void sbc(byte m) {
+        byte acc0 = (byte) regs.getAcc();
+
+        byte notCarry = status.getFlag(CpuStatus.Flag.CARRY) ? (byte) 0 : (byte) 1;
+
+        regs.setAcc((byte) (acc0 - m - notCarry));
+
+        status.setZeroAndNeg(regs.getAcc());
+
+        boolean borrow = (acc0 >> 7) + ((255 - m) >> 7) + (((regs.getAcc() & 0x40) & ((255 - m) & 0x40)) >> 6) <= 1;
+        status.setFlag(CpuStatus.Flag.CARRY, borrow);
+
+        boolean overflow = ((acc0 ^ regs.getAcc()) & ((255 - m) ^ regs.getAcc()) & 0x80) != 0;
+        status.setFlag(CpuStatus.Flag.OVERFLOW, overflow);
+    }
+
+    void dec(byte m, short addr) {
+        short decRes = (short) (m - 1);
+
+        memory.write(addr, (byte) decRes);
+
+        status.setZeroAndNeg(decRes);
+    }
+
+    void dex() {
+        regs.setX((byte) (regs.getX() - 1));
+
+        status.setZeroAndNeg(regs.getX());
+    }
+
+    void dey() {
+        regs.setY((byte) (regs.getY() - 1));
+
+        status.setZeroAndNeg(regs.getY());
+    }
+
+    void inc(byte m, short addr) {
+        short incRes = (short) (m + 1);
+
+        memory.write(addr, (byte) incRes);
+
+        status.setZeroAndNeg(incRes);
+    }
+
+    void inx() {
+        regs.setX((byte) (regs.getX() + 1));
+
+        status.setZeroAndNeg(regs.getX());
+    }
+
+    void iny() {
+        regs.setY((byte) (regs.getY() + 1));
+
+        status.setZeroAndNeg(regs.getY());
+    }
+
+    // logic
+
+    void and(byte m) {
+        regs.setAcc((byte) (regs.getAcc() & m));
+
+        status.setZeroAndNeg(regs.getAcc());
+    }
+
+    void eor(byte m) {
+        regs.setAcc((byte) (regs.getAcc() ^ m));
+
+        status.setZeroAndNeg(regs.getAcc());
+    }
+
+    void ora(byte m) {
+        regs.setAcc((byte) (regs.getAcc() | m));
+
+        status.setZeroAndNeg(regs.getAcc());
+    }
+
+    void bit(byte m) {
+        status.setFlag(CpuStatus.Flag.ZERO, (regs.getAcc() & m) == 0);
+
+        // N and V are copied directly from bits 7 and 6 of the operand
+        status.setFlag(CpuStatus.Flag.NEGATIVE, (m & 0x80) != 0);
+
+        status.setFlag(CpuStatus.Flag.OVERFLOW, (m & 0x40) != 0);
+    }
+
+    void shift(boolean right, boolean rotate, boolean accumulator, byte m, short addr) {
         // fetch the target value either from the accumulator or from memory
-        byte val = instr.getAddressingMode() == AddressingMode.IMP ? (byte) regs.getAcc() : m;
+        byte val = accumulator ? (byte) regs.getAcc() : m;
 
         // rotation mask - contains information about the carry bit
         byte rMask = 0;
@@ -526,107 +705,278 @@ public class CpuInterpreter {
 
         // carry mask - set to the bit which will be copied to the carry flag
         byte cMask = right ? (byte) 0x01 : (byte) 0x80;
-        if ((val & cMask) != 0) {
-            status.setFlag(CpuStatus.Flag.CARRY);
-        } else {
-            status.clearFlag(CpuStatus.Flag.CARRY);
-        }
+        status.setFlag(CpuStatus.Flag.CARRY, (val & cMask) != 0);
 
         // compute the result by shifting and applying the rotation mask
-        byte res = (byte) ((right ? (regs.getAcc() >> 1) : (regs.getAcc() << 1)) | rMask);
+        byte res = (byte) ((right ? (unsign(val) >> 1) : (val << 1)) | rMask);
 
         // set the zero and negative flags based on the result
-        setZeroFlag(res);
-        setNegFlag(res);
+        status.setZeroAndNeg(res);
 
         // write the result to either the accumulator or to memory, depending on the addressing mode
-        if (instr.getAddressingMode() == AddressingMode.IMP) {
+        if (accumulator) {
             regs.setAcc(res);
         } else {
             memory.write(addr, res);
         }
     }
 
+    // branching
+
+    void bcc(byte m) {
+        if (!status.getFlag(CpuStatus.Flag.CARRY)) {
+            branch(m);
+        }
+    }
+
+    void bcs(byte m) {
+        if (status.getFlag(CpuStatus.Flag.CARRY)) {
+            branch(m);
+        }
+    }
+
+    void bne(byte m) {
+        if (!status.getFlag(CpuStatus.Flag.ZERO)) {
+            branch(m);
+        }
+    }
+
+    void beq(byte m) {
+        if (status.getFlag(CpuStatus.Flag.ZERO)) {
+            branch(m);
+        }
+    }
+
+    void bpl(byte m) {
+        if (!status.getFlag(CpuStatus.Flag.NEGATIVE)) {
+            branch(m);
+        }
+    }
+
+    void bmi(byte m) {
+        if (status.getFlag(CpuStatus.Flag.NEGATIVE)) {
+            branch(m);
+        }
+    }
+
+    void bvc(byte m) {
+        if (!status.getFlag(CpuStatus.Flag.OVERFLOW)) {
+            branch(m);
+        }
+    }
+
+    void bvs(byte m) {
+        if (status.getFlag(CpuStatus.Flag.OVERFLOW)) {
+            branch(m);
+        }
+    }
+
+    void jmp(short addr) {
+        regs.setPc(addr);
+    }
+
+    void jsr(short addr) {
+        int pc = regs.getPc() - 1;
+
+        memory.push(regs, (byte) (((pc >> 8) & 0xFF) )); // push MSB of PC
+        memory.push(regs, (byte) ((pc & 0xFF)));        // push LSB of PC
+
+        regs.setPc(addr);
+    }
+
+    void rts() {
+        byte pcl = memory.pop(regs); // pop LSB of PC
+        byte pcm = memory.pop(regs); // pop MSB of PC
+
+        regs.setPc((short) (((pcm << 8) | unsign(pcl)) + 1));
+    }
+
+    // registers
+
+    void clc() {
+        status.clearFlag(CpuStatus.Flag.CARRY);
+    }
+
+    void cli() {
+        status.clearFlag(CpuStatus.Flag.INTERRUPT_DISABLE);
+    }
+
+    void clv() {
+        status.clearFlag(CpuStatus.Flag.OVERFLOW);
+    }
+
+    void cmp(byte m) {
+        compare(regs.getAcc(), unsign(m));
+    }
+
+    void cpx(byte m) {
+        compare(regs.getX(), unsign(m));
+    }
+
+    void cpy(byte m) {
+        compare(regs.getY(), unsign(m));
+    }
+
+    void sec() {
+        status.setFlag(CpuStatus.Flag.CARRY);
+    }
+
+    void sei() {
+        status.setFlag(CpuStatus.Flag.INTERRUPT_DISABLE);
+    }
+
+    // stack
+
+    void pha() {
+        memory.push(regs, (byte) regs.getAcc());
+    }
+
+    void php() {
+        memory.push(regs, status.serialize());
+    }
+
+    void pla() {
+        regs.setAcc(memory.pop(regs));
+
+        status.setZeroAndNeg(regs.getAcc());
+    }
+
+    void plp() {
+        status.deserialize(memory.pop(regs));
+    }
+
+    // system
+
+    void brk() {
+        issueInterrupt(InterruptType.BRK);
+    }
+
+    void rti() {
+        status.deserialize(memory.pop(regs)); // pop flags
+
+        // ORDER IS IMPORTANT
+        short newPc = (short) (unsign(memory.pop(regs)) | (memory.pop(regs) << 8));
+
+        regs.setPc(newPc);
+    }
+
+    void kil() {
+        haltReason = HaltReason.KIL;
+    }
+
+    private void compare(short reg, short m) {
+        if (reg >= 0x80) {
+            status.setFlag(CpuStatus.Flag.NEGATIVE);
+        }
+
+        if (reg >= m) {
+            status.setFlag(CpuStatus.Flag.CARRY);
+            status.setFlag(CpuStatus.Flag.ZERO, reg == m);
+        } else {
+            status.clearFlag(CpuStatus.Flag.CARRY);
+        }
+    }
+
     private void branch(byte m) {
-        regs.setPc((short) (regs.getPc() + m));
+        int oldPc = regs.getPc();
+        regs.setPc((short) (oldPc + m));
+
+        // taken branches cost an extra cycle, plus another if they cross a page boundary
+        cycles += ((oldPc ^ regs.getPc()) & 0xFF00) != 0 ? 2 : 1;
+    }
+
+    // operand resolution - each of these populates the effective address
+    // and/or value M of the current instruction from its raw operand
+
+    void resolveImm() {
+        m = (byte) operand;
+    }
+
+    void resolveZrp() {
+        addr = (short) (operand & 0xFF);
+    }
+
+    void resolveZpx() {
+        addr = (short) ((operand + regs.getX()) & 0xFF);
+    }
+
+    void resolveZpy() {
+        addr = (short) ((operand + regs.getY()) & 0xFF);
+    }
+
+    void resolveAbs() {
+        addr = (short) operand;
+    }
+
+    void resolveAbx() {
+        int base = operand;
+        addr = (short) (base + regs.getX());
+        pageCrossed = ((base ^ unsign(addr)) & 0xFF00) != 0;
+    }
+
+    void resolveAby() {
+        int base = operand;
+        addr = (short) (base + regs.getY());
+        pageCrossed = ((base ^ unsign(addr)) & 0xFF00) != 0;
+    }
+
+    void resolveInd() {
+        int origAddr = operand;
+        byte addrLow = memory.read(origAddr);
+        // the pointer's high byte is read without carrying into the page, so
+        // JMP ($xxFF) wraps around to $xx00
+        byte addrHigh = memory.read((origAddr & 0xFF00) | ((origAddr + 1) & 0xFF));
+        addr = (short) (unsign(addrLow) | (addrHigh << 8));
+    }
+
+    void resolveIzx() {
+        int origAddr = (regs.getX() + operand) & 0xFF;
+        byte addrLow = memory.read(origAddr);
+        byte addrHigh = memory.read((origAddr + 1) & 0xFF);
+        addr = (short) (unsign(addrLow) | (addrHigh << 8));
+    }
+
+    void resolveIzy() {
+        int origAddr = operand & 0xFF;
+        byte addrLow = memory.read(origAddr);
+        byte addrHigh = memory.read((origAddr + 1) & 0xFF);
+        int base = unsign(addrLow) | (unsign(addrHigh) << 8);
+        addr = (short) (base + regs.getY());
+        pageCrossed = ((base ^ unsign(addr)) & 0xFF00) != 0;
+    }
+
+    void resolveRel() {
+        m = (byte) operand;
+    }
+
+    void resolveImp() {
+        // no operand
     }
 
     /**
-     * Returns value M, along with the address it was read from, if applicable.
-     * @param mode The addressing mode to use
-     * @return The read value along with the address it was obtained from (if applicable)
+     * Reads value M from the effective address of the current instruction.
      */
-    private Pair<Byte, Short> getM(AddressingMode mode) {
-        switch (mode) {
-            case IMM: {
-                return Pair.of(readPrg(), (short) 0);
-            }
-            case REL: {
-                return Pair.of(readPrg(), (short) 0);
-            }
-            case ZRP: {
-                short addr = unsign(readPrg());
-                return Pair.of(memory.read(addr), addr);
-            }
-            case ZPX: {
-                byte addr = readPrg();
-                addr += regs.getX();
-                return Pair.of(memory.read(addr), unsign(addr));
-            }
-            case ZPY: {
-                byte addr = readPrg();
-                addr += regs.getY();
-                return Pair.of(memory.read(addr), unsign(addr));
-            }
-            case ABS: {
-                short addr = readShort();
-                return Pair.of(memory.read(addr), addr);
-            }
-            case ABX: {
-                short addr = (short) (regs.getX() + readShort());
-                return Pair.of(memory.read(addr), addr);
-            }
-            case ABY: {
-                short addr = (short) (regs.getY() + readShort());
-                return Pair.of(memory.read(addr), addr);
-            }
-            case IND: {
-                short origAddr = readShort();
-                byte addrLow = memory.read(origAddr);
-                byte addrHigh = memory.read(origAddr + 1);
-                short addr = (short) (addrLow | (addrHigh << 8));
-                return Pair.of(memory.read(addr), addr);
-            }
-            case IZX: {
-                short origAddr = (short) (regs.getX() + unsign(readPrg()));
-                byte addrLow = memory.read(origAddr);
-                byte addrHigh = memory.read(origAddr + 1);
-                short addr = (short) (addrLow | (addrHigh << 8));
-                return Pair.of(memory.read(addr), addr);
-            }
-            case IZY: {
-                byte origAddr = readPrg();
-                byte addrLow = memory.read(origAddr);
-                byte addrHigh = memory.read(origAddr + 1);
-                short addr = (short) (regs.getY() + (addrLow | (addrHigh << 8)));
-                return Pair.of(memory.read(addr), addr);
-            }
-            case IMP: {
-                return Pair.of((byte) 0, (short) 0);
-            }
-            default: {
-                throw new AssertionError("Unhandled addressing mode " + mode.name());
-            }
-        }
+    void readM() {
+        m = memory.read(addr);
     }
 
     private byte readPrg() {
         return memory.read(regs.popPc());
     }
 
-    private short readShort() {
-        // ORDER IS IMPORTANT
-        return (short) (unsign(readPrg()) | (unsign(readPrg()) << 8));
+    /**
+     * Reads the raw operand of the instruction whose opcode was just
+     * fetched, advancing the program counter past it.
+     *
+     * @param length The total length of the instruction in bytes
+     */
+    void fetchOperand(int length) {
+        if (length == 2) {
+            operand = unsign(readPrg());
+        } else if (length == 3) {
+            // ORDER IS IMPORTANT
+            operand = unsign(readPrg()) | (unsign(readPrg()) << 8);
+        }
     }
 
     byte peekPrg() {
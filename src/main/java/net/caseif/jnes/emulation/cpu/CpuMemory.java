@@ -27,18 +27,200 @@ package net.caseif.jnes.emulation.cpu;
 
 import static net.caseif.jnes.util.MathHelper.unsign;
 
-import net.caseif.jnes.model.Cartridge;
-
+/**
+ * The CPU's view of the 16-bit address space.
+ *
+ * <p>Addresses are resolved through a table with one entry per 256-byte
+ * page. A page is either backed by a region of an array, in which case reads
+ * (and writes, if the page is writable) are a single array access, or by an
+ * {@link IoHandler}. Read-only pages fall back to their handler for writes,
+ * which is where e.g. mapper registers live. Mappers swap banks by
+ * remapping pages through {@link #mapMemory} and {@link #mapIo}.</p>
+ */
 public class CpuMemory {
 
-    private final Cartridge cart;
+    /**
+     * Handler for unmapped pages, which read as 0 and ignore writes.
+     */
+    public static final IoHandler UNMAPPED = new IoHandler() {
+        @Override
+        public byte read(int addr) {
+            return 0;
+        }
+
+        @Override
+        public void write(int addr, byte value) {
+        }
+    };
+
+    private static final int PAGE_SIZE = 0x100;
+    private static final int PAGE_COUNT = 0x100;
+
     private final CpuInterpreter interpreter;
 
     private final byte[] sysMemory = new byte[2048];
 
-    public CpuMemory(Cartridge cart, CpuInterpreter interpreter) {
-        this.cart = cart;
+    // backing array of each page for reads and writes, or null if accesses
+    // go through the page's I/O handler
+    private final byte[][] readPages = new byte[PAGE_COUNT][];
+    private final byte[][] writePages = new byte[PAGE_COUNT][];
+    // offset of each page within its backing array
+    private final int[] pageOffsets = new int[PAGE_COUNT];
+    private final IoHandler[] ioHandlers = new IoHandler[PAGE_COUNT];
+
+    public CpuMemory(CpuInterpreter interpreter) {
         this.interpreter = interpreter;
+
+        // internal RAM, mirrored 4 times
+        for (int i = 0; i < 4; i++) {
+            setPages(i * 0x08, 0x08, sysMemory, 0, true, UNMAPPED);
+        }
+
+        // PPU registers, mirrored every 8 bytes
+        setPages(0x20, 0x20, null, 0, false, new IoHandler() {
+            @Override
+            public byte read(int addr) {
+                interpreter.syncPpu();
+                return interpreter.getPpu().readMmio((byte) (addr % 8));
+            }
+
+            @Override
+            public void write(int addr, byte value) {
+                interpreter.syncPpu();
+                interpreter.getPpu().writeMmio((byte) (addr % 8), value);
+            }
+        });
+
+        // APU and I/O registers
+        setPages(0x40, 0x01, null, 0, false, new IoHandler() {
+            @Override
+            public byte read(int addr) {
+                if (addr == 0x4014) {
+                    //TODO: I think this is supposed to return the PPU latch value
+                    return 0;
+                } else {
+                    return 0; //TODO
+                }
+            }
+
+            @Override
+            public void write(int addr, byte value) {
+                if (addr == 0x4014) {
+                    interpreter.performOamDma(unsign(value));
+                } else {
+                    //TODO
+                }
+            }
+        });
+
+        // expansion area, PRG RAM and PRG ROM, which are mapped by the
+        // cartridge's mapper
+        setPages(0x41, 0xBF, null, 0, false, UNMAPPED);
+    }
+
+    /**
+     * Gets the backing array of internal RAM, for callers which have
+     * already determined that an access falls within it.
+     *
+     * @return The 2KB internal RAM array
+     */
+    byte[] getRam() {
+        return sysMemory;
+    }
+
+    /**
+     * Maps a range of pages to a contiguous region of an array, e.g. when
+     * switching banks.
+     *
+     * @param startPage The first page to map (the high byte of its address)
+     * @param pageCount The number of pages to map
+     * @param data The array backing the pages
+     * @param offset The offset into the array of the first page
+     * @param writable Whether writes to the pages should be stored in the
+     *     array rather than passed to the pages' I/O handler
+     */
+    public void mapMemory(int startPage, int pageCount, byte[] data, int offset, boolean writable) {
+        // games often select the bank which is already mapped, so only drop
+        // cached code if the mapping actually changes
+        boolean changed = false;
+        for (int i = 0; i < pageCount; i++) {
+            int page = startPage + i;
+            if (readPages[page] != data || pageOffsets[page] != offset + i * PAGE_SIZE) {
+                changed = true;
+            }
+            setPages(page, 1, data, offset + i * PAGE_SIZE, writable, ioHandlers[page]);
+        }
+
+        if (changed) {
+            interpreter.blockCache.invalidateRange(startPage * PAGE_SIZE, (startPage + pageCount) * PAGE_SIZE - 1);
+        }
+    }
+
+    /**
+     * Maps a range of pages to an I/O handler, which will receive all reads
+     * and writes to them.
+     *
+     * @param startPage The first page to map (the high byte of its address)
+     * @param pageCount The number of pages to map
+     * @param handler The handler for the pages
+     */
+    public void mapIo(int startPage, int pageCount, IoHandler handler) {
+        setPages(startPage, pageCount, null, 0, false, handler);
+
+        interpreter.blockCache.invalidateRange(startPage * PAGE_SIZE, (startPage + pageCount) * PAGE_SIZE - 1);
+    }
+
+    /**
+     * Sets the handler which receives writes to a range of read-only pages
+     * without changing what they read from.
+     *
+     * @param startPage The first page (the high byte of its address)
+     * @param pageCount The number of pages
+     * @param handler The handler for writes to the pages
+     */
+    public void setWriteHandler(int startPage, int pageCount, IoHandler handler) {
+        for (int page = startPage; page < startPage + pageCount; page++) {
+            ioHandlers[page] = handler;
+        }
+    }
+
+    /**
+     * Copies a full page of memory.
+     *
+     * @param page The page to copy (the high byte of its address)
+     * @param dest The array to copy the page into
+     */
+    void readPage(int page, byte[] dest) {
+        byte[] data = readPages[page];
+        if (data != null) {
+            System.arraycopy(data, pageOffsets[page], dest, 0, PAGE_SIZE);
+        } else {
+            for (int i = 0; i < PAGE_SIZE; i++) {
+                dest[i] = ioHandlers[page].read((page << 8) | i);
+            }
+        }
+    }
+
+    /**
+     * Gets whether the given address is backed by memory, i.e. RAM or ROM,
+     * rather than being unmapped or an I/O register.
+     *
+     * @param addr The address to check
+     * @return Whether the address is backed by memory
+     */
+    public boolean isBacked(int addr) {
+        return readPages[(addr & 0xFFFF) >>> 8] != null;
+    }
+
+    private void setPages(int startPage, int pageCount, byte[] data, int offset, boolean writable,
+            IoHandler handler) {
+        for (int i = 0; i < pageCount; i++) {
+            int page = startPage + i;
+            readPages[page] = data;
+            writePages[page] = writable ? data : null;
+            pageOffsets[page] = offset + i * PAGE_SIZE;
+            ioHandlers[page] = handler;
+        }
     }
 
     public byte read(byte addr) {
@@ -50,27 +232,13 @@ public class CpuMemory {
     }
 
     public byte read(int addr) {
-        if (addr < 0x2000) {
-            return sysMemory[addr % 0x800];
-        } else if (addr < 0x4000) {
-            return interpreter.getPpu().readMmio((byte) (addr % 8));
-        } else if (addr < 0x4020) {
-            if (addr == 0x4014) {
-                //TODO: I think this is supposed to return the PPU latch value
-                return 0;
-            } else {
-                return 0; //TODO
-            }
-        } else if (addr < 0x8000) {
-            return 0; //TODO
-        } else {
-            addr -= 0x8000;
-            // ROM is mirrored if cartridge only has 1 bank
-            if (cart.getPrgRom().length <= 16384) {
-                addr %= 0x4000;
-            }
-            return cart.getPrgRom()[addr];
+        addr &= 0xFFFF;
+        int page = addr >>> 8;
+        byte[] data = readPages[page];
+        if (data != null) {
+            return data[pageOffsets[page] + (addr & 0xFF)];
         }
+        return ioHandlers[page].read(addr);
     }
 
     public void write(short addr, byte value) {
@@ -78,29 +246,50 @@ public class CpuMemory {
     }
 
     public void write(int addr, byte value) {
-        if (addr < 0x2000) {
-            sysMemory[addr % 0x800] = value;
-        } else if (addr < 0x4000) {
-            interpreter.getPpu().writeMmio((byte) (addr % 8), value);
-        } else if (addr < 0x4020) {
-            if (addr == 0x4014) {
-                interpreter.getPpu().writeOamDmaAddrHigh(value);
-            } else {
-                //TODO
-            }
+        addr &= 0xFFFF;
+        int page = addr >>> 8;
+        byte[] data = writePages[page];
+        if (data != null) {
+            data[pageOffsets[page] + (addr & 0xFF)] = value;
+            interpreter.blockCache.onWrite(addr);
+        } else {
+            ioHandlers[page].write(addr, value);
         }
-
-        // attempts to write to ROM fail silently
     }
 
     public void push(CpuRegisters regs, byte value) {
-        sysMemory[0x100 + regs.getSp()] = value;
+        writePages[0x01][pageOffsets[0x01] + regs.getSp()] = value;
+        interpreter.blockCache.onWrite(0x100 + regs.getSp());
         regs.setSp((byte) (regs.getSp() - 1));
     }
 
     public byte pop(CpuRegisters regs) {
         regs.setSp((byte) (regs.getSp() + 1));
-        return sysMemory[0x100 + regs.getSp()];
+        return readPages[0x01][pageOffsets[0x01] + regs.getSp()];
+    }
+
+    /**
+     * Handler for accesses to pages which are not backed directly by an
+     * array.
+     */
+    public interface IoHandler {
+
+        /**
+         * Reads a byte.
+         *
+         * @param addr The full 16-bit address being read
+         * @return The value read
+         */
+        byte read(int addr);
+
+        /**
+         * Writes a byte.
+         *
+         * @param addr The full 16-bit address being written
+         * @param value The value to write
+         */
+        void write(int addr, byte value);
+
     }
 
 }
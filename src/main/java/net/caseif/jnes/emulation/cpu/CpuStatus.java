@@ -25,36 +25,92 @@
 
 package net.caseif.jnes.emulation.cpu;
 
-import java.util.Arrays;
-import java.util.Map;
-import java.util.stream.Collectors;
-
+/**
+ * The processor status (P) register.
+ *
+ * <p>The carry, interrupt disable, break and overflow flags are packed into
+ * a single byte. The zero and negative flags are instead evaluated lazily from
+ * the result of the last operation which affected them, since nearly every
+ * instruction updates them but comparatively few read them back.</p>
+ */
 public class CpuStatus {
 
-    private final Map<Flag, Boolean> flags = Arrays.stream(Flag.values()).collect(Collectors.toMap(f -> f, f -> false));
+    private static final int ZERO_MASK = Flag.ZERO.getMask();
+    private static final int NEGATIVE_MASK = Flag.NEGATIVE.getMask();
+
+    // flags which are stored directly in the packed byte
+    private static final int PACKED_MASK = Flag.CARRY.getMask()
+            | Flag.INTERRUPT_DISABLE.getMask()
+            | Flag.BREAK_COMMAND.getMask()
+            | Flag.OVERFLOW.getMask();
+
+    private byte packed = 0;
+
+    // Z is set iff the low byte of this value is 0
+    private int zeroSource = 1;
+    // N is set iff bit 7 of this value is set
+    private int negativeSource = 0;
 
     public boolean getFlag(Flag flag) {
-        return flags.get(flag);
+        if (flag == Flag.ZERO) {
+            return (zeroSource & 0xFF) == 0;
+        } else if (flag == Flag.NEGATIVE) {
+            return (negativeSource & 0x80) != 0;
+        } else {
+            return (packed & flag.getMask()) != 0;
+        }
     }
 
     public void setFlag(Flag flag) {
-        flags.put(flag, true);
+        if (flag == Flag.ZERO) {
+            zeroSource = 0;
+        } else if (flag == Flag.NEGATIVE) {
+            negativeSource = 0x80;
+        } else {
+            packed |= flag.getMask();
+        }
     }
 
     public void clearFlag(Flag flag) {
-        flags.put(flag, false);
+        if (flag == Flag.ZERO) {
+            zeroSource = 1;
+        } else if (flag == Flag.NEGATIVE) {
+            negativeSource = 0;
+        } else {
+            packed &= ~flag.getMask();
+        }
     }
 
-    public byte serialize() {
-        return Arrays.stream(Flag.values()).map(this::shift).reduce((byte) 0, (r, b) -> (byte) (r | b));
+    public void setFlag(Flag flag, boolean value) {
+        if (value) {
+            setFlag(flag);
+        } else {
+            clearFlag(flag);
+        }
     }
 
-    public void deserialize(byte serial) {
-        Arrays.stream(Flag.values()).forEach(f -> flags.put(f, (serial & (1 << f.getPosition())) != 0));
+    /**
+     * Updates the zero and negative flags to reflect the given result. The
+     * flags themselves are not computed until they are next read.
+     *
+     * @param result The result of the last operation (only the low byte is
+     *     considered)
+     */
+    void setZeroAndNeg(int result) {
+        zeroSource = result;
+        negativeSource = result;
     }
 
-    private byte shift(Flag flag) {
-        return getFlag(flag) ? (byte) (1 << flag.getPosition()) : 0;
+    public byte serialize() {
+        return (byte) (packed
+                | ((zeroSource & 0xFF) == 0 ? ZERO_MASK : 0)
+                | (negativeSource & NEGATIVE_MASK));
+    }
+
+    public void deserialize(byte serial) {
+        packed = (byte) (serial & PACKED_MASK);
+        zeroSource = (serial & ZERO_MASK) != 0 ? 0 : 1;
+        negativeSource = serial;
     }
 
     public enum Flag {
@@ -66,14 +122,14 @@ public class CpuStatus {
         OVERFLOW(6),
         NEGATIVE(7);
 
-        private final int pos;
+        private final int mask;
 
         Flag(int pos) {
-            this.pos = pos;
+            this.mask = 1 << pos;
         }
 
-        private int getPosition() {
-            return pos;
+        private int getMask() {
+            return mask;
         }
     }
 
@@ -23,7 +23,15 @@
  * THE SOFTWARE.
  */
 
-package net.caseif.jnes.util.exception;
+package net.caseif.jnes.emulation.cpu;
+
+/**
+ * Executes a single opcode against a {@link CpuInterpreter}, with the
+ * instruction's addressing mode already bound.
+ */
+@FunctionalInterface
+interface OpcodeHandler {
+
+    void execute(CpuInterpreter cpu);
 
-public class CpuHaltedException extends Exception {
 }
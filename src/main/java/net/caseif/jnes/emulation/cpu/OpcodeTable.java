@@ -0,0 +1,314 @@
+/*
+ * This file is a part of jNES.
+ * Copyright (c) 2018-2019, Max Roncace <mproncace@gmail.com>
+ *
+ * The MIT License
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package net.caseif.jnes.emulation.cpu;
+
+import net.caseif.jnes.model.cpu.AddressingMode;
+import net.caseif.jnes.model.cpu.Instruction;
+import net.caseif.jnes.model.cpu.Mnemonic;
+
+/**
+ * Dispatch table mapping each of the 256 opcodes to a handler which resolves
+ * its operand and executes it.
+ *
+ * <p>The table is built once from the {@link Instruction} tables, so that
+ * executing an instruction requires an indexed lookup rather than a switch
+ * on its mnemonic and another on its addressing mode. Each handler is still a
+ * composition, though: the call to the handler is followed by calls to its
+ * operand resolver and its operation, and since all three are shared between
+ * many opcodes, each call site is megamorphic.</p>
+ */
+final class OpcodeTable {
+
+    private static final OpcodeHandler[] HANDLERS = new OpcodeHandler[256];
+    private static final int[] LENGTHS = new int[256];
+
+    static {
+        for (int i = 0; i < HANDLERS.length; i++) {
+            HANDLERS[i] = bind((byte) i);
+            LENGTHS[i] = Instruction.fromOpcode((byte) i).getLength();
+        }
+    }
+
+    private OpcodeTable() {
+    }
+
+    /**
+     * Gets the handler for the given (unsigned) opcode.
+     *
+     * @param opcode The opcode, in the range 0-255
+     * @return The handler for the opcode
+     */
+    static OpcodeHandler get(int opcode) {
+        return HANDLERS[opcode];
+    }
+
+    /**
+     * Gets the total length in bytes of the instruction with the given
+     * (unsigned) opcode, including the opcode itself.
+     *
+     * @param opcode The opcode, in the range 0-255
+     * @return The length of the instruction
+     */
+    static int getLength(int opcode) {
+        return LENGTHS[opcode];
+    }
+
+    private static OpcodeHandler bind(byte opcode) {
+        Instruction instr = Instruction.fromOpcode(opcode);
+        OperandResolver resolver = resolverFor(instr.getAddressingMode());
+        Operation op = operationFor(instr);
+        int baseCycles = Instruction.getBaseCycles(opcode);
+
+        if (instr.hasPageCrossPenalty()) {
+            // these all read from memory (even the undocumented NOPs perform a dummy read)
+            return cpu -> {
+                resolver.resolve(cpu);
+                cpu.readM();
+                op.execute(cpu);
+                cpu.cycles += cpu.pageCrossed ? baseCycles + 1 : baseCycles;
+            };
+        } else if (readsMemory(instr)) {
+            return cpu -> {
+                resolver.resolve(cpu);
+                cpu.readM();
+                op.execute(cpu);
+                cpu.cycles += baseCycles;
+            };
+        } else {
+            return cpu -> {
+                resolver.resolve(cpu);
+                op.execute(cpu);
+                cpu.cycles += baseCycles;
+            };
+        }
+    }
+
+    /**
+     * Returns whether the given instruction reads its operand from memory, as
+     * opposed to only using its effective address (or taking no memory
+     * operand at all).
+     *
+     * @param instr The instruction to check
+     * @return Whether the instruction reads value M from memory
+     */
+    static boolean readsMemory(Instruction instr) {
+        switch (instr.getAddressingMode()) {
+            case IMM:
+            case REL:
+            case IMP:
+                return false;
+            default:
+                Mnemonic.Type type = instr.getMnemonic().getType();
+                return type == Mnemonic.Type.R || type == Mnemonic.Type.RW;
+        }
+    }
+
+    static OperandResolver resolverFor(AddressingMode mode) {
+        switch (mode) {
+            case IMM:
+                return CpuInterpreter::resolveImm;
+            case ZRP:
+                return CpuInterpreter::resolveZrp;
+            case ZPX:
+                return CpuInterpreter::resolveZpx;
+            case ZPY:
+                return CpuInterpreter::resolveZpy;
+            case ABS:
+                return CpuInterpreter::resolveAbs;
+            case ABX:
+                return CpuInterpreter::resolveAbx;
+            case ABY:
+                return CpuInterpreter::resolveAby;
+            case IND:
+                return CpuInterpreter::resolveInd;
+            case IZX:
+                return CpuInterpreter::resolveIzx;
+            case IZY:
+                return CpuInterpreter::resolveIzy;
+            case REL:
+                return CpuInterpreter::resolveRel;
+            case IMP:
+                return CpuInterpreter::resolveImp;
+            default:
+                throw new AssertionError("Unhandled addressing mode " + mode.name());
+        }
+    }
+
+    static Operation operationFor(Instruction instr) {
+        boolean acc = instr.getAddressingMode() == AddressingMode.IMP;
+
+        switch (instr.getMnemonic()) {
+            // storage
+            case LDA:
+                return cpu -> cpu.lda(cpu.m);
+            case LDX:
+                return cpu -> cpu.ldx(cpu.m);
+            case LDY:
+                return cpu -> cpu.ldy(cpu.m);
+            case STA:
+                return cpu -> cpu.sta(cpu.addr);
+            case STX:
+                return cpu -> cpu.stx(cpu.addr);
+            case STY:
+                return cpu -> cpu.sty(cpu.addr);
+            case TAX:
+                return cpu -> cpu.tax();
+            case TAY:
+                return cpu -> cpu.tay();
+            case TSX:
+                return cpu -> cpu.tsx();
+            case TXA:
+                return cpu -> cpu.txa();
+            case TYA:
+                return cpu -> cpu.tya();
+            case TXS:
+                return cpu -> cpu.txs();
+            // math
+            case ADC:
+                return cpu -> cpu.adc(cpu.m);
+            case SBC:
+                return cpu -> cpu.sbc(cpu.m);
+            case DEC:
+                return cpu -> cpu.dec(cpu.m, cpu.addr);
+            case DEX:
+                return cpu -> cpu.dex();
+            case DEY:
+                return cpu -> cpu.dey();
+            case INC:
+                return cpu -> cpu.inc(cpu.m, cpu.addr);
+            case INX:
+                return cpu -> cpu.inx();
+            case INY:
+                return cpu -> cpu.iny();
+            // logic
+            case AND:
+                return cpu -> cpu.and(cpu.m);
+            case ASL:
+                return cpu -> cpu.shift(false, false, acc, cpu.m, cpu.addr);
+            case LSR:
+                return cpu -> cpu.shift(true, false, acc, cpu.m, cpu.addr);
+            case BIT:
+                return cpu -> cpu.bit(cpu.m);
+            case EOR:
+                return cpu -> cpu.eor(cpu.m);
+            case ORA:
+                return cpu -> cpu.ora(cpu.m);
+            case ROL:
+                return cpu -> cpu.shift(false, true, acc, cpu.m, cpu.addr);
+            case ROR:
+                return cpu -> cpu.shift(true, true, acc, cpu.m, cpu.addr);
+            // branching
+            case BCC:
+                return cpu -> cpu.bcc(cpu.m);
+            case BCS:
+                return cpu -> cpu.bcs(cpu.m);
+            case BNE:
+                return cpu -> cpu.bne(cpu.m);
+            case BEQ:
+                return cpu -> cpu.beq(cpu.m);
+            case BPL:
+                return cpu -> cpu.bpl(cpu.m);
+            case BMI:
+                return cpu -> cpu.bmi(cpu.m);
+            case BVC:
+                return cpu -> cpu.bvc(cpu.m);
+            case BVS:
+                return cpu -> cpu.bvs(cpu.m);
+            case JMP:
+                return cpu -> cpu.jmp(cpu.addr);
+            case JSR:
+                return cpu -> cpu.jsr(cpu.addr);
+            case RTI:
+                return cpu -> cpu.rti();
+            case RTS:
+                return cpu -> cpu.rts();
+            // registers
+            case CLC:
+                return cpu -> cpu.clc();
+            case CLI:
+                return cpu -> cpu.cli();
+            case CLV:
+                return cpu -> cpu.clv();
+            case CMP:
+                return cpu -> cpu.cmp(cpu.m);
+            case CPX:
+                return cpu -> cpu.cpx(cpu.m);
+            case CPY:
+                return cpu -> cpu.cpy(cpu.m);
+            case SEC:
+                return cpu -> cpu.sec();
+            case SEI:
+                return cpu -> cpu.sei();
+            // stack
+            case PHA:
+                return cpu -> cpu.pha();
+            case PHP:
+                return cpu -> cpu.php();
+            case PLA:
+                return cpu -> cpu.pla();
+            case PLP:
+                return cpu -> cpu.plp();
+            // system
+            case BRK:
+                return cpu -> cpu.brk();
+            case KIL:
+                return cpu -> cpu.kil();
+            case CLD:
+            case SED:
+                // no-op since decimal mode is unimplemented
+            case NOP:
+            default:
+                // the undocumented instructions other than KIL and NOP (ANC, SLO, LAX and the
+                // rest) aren't implemented, so they only consume their operand and cycles
+                return cpu -> {
+                };
+        }
+    }
+
+    /**
+     * Resolves the raw operand of an instruction, already fetched by the
+     * interpreter, into its effective address (or immediate value) according
+     * to its addressing mode.
+     */
+    @FunctionalInterface
+    interface OperandResolver {
+
+        void resolve(CpuInterpreter cpu);
+
+    }
+
+    /**
+     * Executes the operation of an instruction, using the operand already
+     * resolved into the interpreter.
+     */
+    @FunctionalInterface
+    interface Operation {
+
+        void execute(CpuInterpreter cpu);
+
+    }
+
+}
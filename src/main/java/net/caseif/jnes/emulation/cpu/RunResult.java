@@ -0,0 +1,85 @@
+/*
+ * This file is a part of jNES.
+ * Copyright (c) 2018-2019, Max Roncace <mproncace@gmail.com>
+ *
+ * The MIT License
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package net.caseif.jnes.emulation.cpu;
+
+import net.caseif.jnes.model.cpu.HaltReason;
+
+/**
+ * The outcome of a batch of execution.
+ */
+public final class RunResult {
+
+    private final long cycles;
+    private final int frames;
+    private final HaltReason haltReason;
+
+    RunResult(long cycles, int frames, HaltReason haltReason) {
+        this.cycles = cycles;
+        this.frames = frames;
+        this.haltReason = haltReason;
+    }
+
+    /**
+     * Gets the number of CPU cycles executed.
+     *
+     * <p>This may exceed the requested budget by up to the length of the
+     * last instruction (or compiled block) executed.</p>
+     *
+     * @return The number of cycles executed
+     */
+    public long getCycles() {
+        return cycles;
+    }
+
+    /**
+     * Gets the number of frames the PPU completed.
+     *
+     * @return The number of frames completed
+     */
+    public int getFrames() {
+        return frames;
+    }
+
+    /**
+     * Gets the reason the CPU halted, if it did.
+     *
+     * @return The reason the CPU halted, or {@link HaltReason#NONE} if
+     *     execution stopped because its budget was exhausted
+     */
+    public HaltReason getHaltReason() {
+        return haltReason;
+    }
+
+    public boolean isHalted() {
+        return haltReason != HaltReason.NONE;
+    }
+
+    @Override
+    public String toString() {
+        return "RunResult{cycles=" + cycles + ", frames=" + frames + ", haltReason=" + haltReason + "}";
+    }
+
+}
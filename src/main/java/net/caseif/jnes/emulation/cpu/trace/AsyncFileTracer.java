@@ -0,0 +1,216 @@
+/*
+ * This file is a part of jNES.
+ * Copyright (c) 2018-2019, Max Roncace <mproncace@gmail.com>
+ *
+ * The MIT License
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package net.caseif.jnes.emulation.cpu.trace;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * A tracer which writes each instruction to a file from a background thread.
+ *
+ * <p>Entries are collected into fixed-size chunks on the emulation thread and
+ * handed off to the writer thread once full, so the emulation thread performs
+ * no I/O or formatting. Chunks are recycled once written.</p>
+ *
+ * <p>If writing fails, the writer thread stops and any further entries are
+ * discarded. The failure is rethrown by {@link #close()}.</p>
+ */
+public class AsyncFileTracer implements ExecutionTracer, Closeable {
+
+    private static final int CHUNK_SIZE = 4096;
+    private static final int CHUNK_COUNT = 4;
+
+    // signals the writer thread to exit
+    private static final Chunk POISON = new Chunk(0);
+
+    private final BufferedWriter writer;
+    private final Thread writerThread;
+
+    // room for every chunk, the spare handed out if the writer fails, and the poison
+    private final BlockingQueue<Chunk> filled = new ArrayBlockingQueue<>(CHUNK_COUNT + 2);
+    private final BlockingQueue<Chunk> free = new ArrayBlockingQueue<>(CHUNK_COUNT);
+
+    private Chunk current;
+
+    private volatile IOException failure;
+
+    public AsyncFileTracer(Path path) throws IOException {
+        this.writer = Files.newBufferedWriter(path);
+
+        for (int i = 0; i < CHUNK_COUNT - 1; i++) {
+            free.add(new Chunk(CHUNK_SIZE));
+        }
+        current = new Chunk(CHUNK_SIZE);
+
+        writerThread = new Thread(this::writeLoop, "jNES trace writer");
+        writerThread.setDaemon(true);
+        writerThread.start();
+    }
+
+    @Override
+    public void trace(long entry) {
+        if (current == null) {
+            // already closed
+            return;
+        }
+
+        current.entries[current.size++] = entry;
+
+        if (current.size == CHUNK_SIZE) {
+            if (failure != null) {
+                // the writer thread has stopped, so nothing would ever be recycled
+                current.size = 0;
+                return;
+            }
+
+            putUninterruptibly(filled, current);
+            current = takeUninterruptibly(free);
+        }
+    }
+
+    @Override
+    public void dump(PrintStream out) {
+        out.println("Execution trace is being written to file.");
+    }
+
+    /**
+     * Flushes all pending entries to the file and stops the writer thread.
+     *
+     * @throws IOException If an error occurred while writing the trace
+     */
+    @Override
+    public void close() throws IOException {
+        if (current == null) {
+            return;
+        }
+
+        if (failure == null) {
+            if (current.size > 0) {
+                putUninterruptibly(filled, current);
+            }
+            putUninterruptibly(filled, POISON);
+        }
+        current = null;
+
+        boolean interrupted = false;
+        while (writerThread.isAlive()) {
+            try {
+                writerThread.join();
+            } catch (InterruptedException ex) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+
+        writer.close();
+
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    private void writeLoop() {
+        try {
+            while (true) {
+                Chunk chunk = takeUninterruptibly(filled);
+
+                if (chunk == POISON) {
+                    break;
+                }
+
+                for (int i = 0; i < chunk.size; i++) {
+                    writer.write(TraceEntry.format(chunk.entries[i]));
+                    writer.newLine();
+                }
+
+                chunk.size = 0;
+                putUninterruptibly(free, chunk);
+            }
+
+            writer.flush();
+        } catch (Throwable t) {
+            failure = t instanceof IOException ? (IOException) t : new IOException(t);
+
+            // the emulation thread may be waiting on a chunk which will now never be recycled
+            free.offer(new Chunk(CHUNK_SIZE));
+        }
+    }
+
+    private static <T> T takeUninterruptibly(BlockingQueue<T> queue) {
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    return queue.take();
+                } catch (InterruptedException ex) {
+                    interrupted = true;
+                }
+            }
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private static <T> void putUninterruptibly(BlockingQueue<T> queue, T val) {
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    queue.put(val);
+                    return;
+                } catch (InterruptedException ex) {
+                    interrupted = true;
+                }
+            }
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private static class Chunk {
+
+        private final long[] entries;
+        private int size = 0;
+
+        private Chunk(int capacity) {
+            this.entries = new long[capacity];
+        }
+
+    }
+
+}
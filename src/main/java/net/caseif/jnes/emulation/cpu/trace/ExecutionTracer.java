@@ -0,0 +1,62 @@
+/*
+ * This file is a part of jNES.
+ * Copyright (c) 2018-2019, Max Roncace <mproncace@gmail.com>
+ *
+ * The MIT License
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package net.caseif.jnes.emulation.cpu.trace;
+
+import java.io.PrintStream;
+
+/**
+ * Receives a record of each instruction executed by the CPU.
+ *
+ * <p>Records are packed into a single {@code long} (see {@link TraceEntry})
+ * so that tracing does not allocate on the emulation thread.</p>
+ */
+public interface ExecutionTracer {
+
+    /**
+     * A tracer which discards everything. The interpreter recognizes this
+     * instance and skips tracing altogether, so it costs nothing.
+     */
+    ExecutionTracer DISABLED = entry -> {
+    };
+
+    /**
+     * Records an instruction which is about to be executed.
+     *
+     * @param entry The packed trace entry
+     */
+    void trace(long entry);
+
+    /**
+     * Dumps any instruction history retained by this tracer.
+     *
+     * <p>This is invoked when the CPU crashes.</p>
+     *
+     * @param out The stream to dump to
+     */
+    default void dump(PrintStream out) {
+    }
+
+}
@@ -0,0 +1,80 @@
+/*
+ * This file is a part of jNES.
+ * Copyright (c) 2018-2019, Max Roncace <mproncace@gmail.com>
+ *
+ * The MIT License
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package net.caseif.jnes.emulation.cpu.trace;
+
+import com.google.common.base.Preconditions;
+
+import java.io.PrintStream;
+
+/**
+ * A tracer which retains the last N instructions executed in memory, for
+ * inclusion in crash dumps.
+ */
+public class RingBufferTracer implements ExecutionTracer {
+
+    private final long[] entries;
+
+    private long count = 0;
+
+    public RingBufferTracer(int capacity) {
+        Preconditions.checkArgument(capacity > 0, "Capacity must be positive");
+
+        this.entries = new long[capacity];
+    }
+
+    @Override
+    public void trace(long entry) {
+        entries[(int) (count++ % entries.length)] = entry;
+    }
+
+    /**
+     * Returns the retained entries, oldest first.
+     *
+     * @return The retained entries
+     */
+    public long[] getEntries() {
+        int size = (int) Math.min(count, entries.length);
+        long[] res = new long[size];
+
+        for (int i = 0; i < size; i++) {
+            res[i] = entries[(int) ((count - size + i) % entries.length)];
+        }
+
+        return res;
+    }
+
+    @Override
+    public void dump(PrintStream out) {
+        long[] history = getEntries();
+
+        out.println("Last " + history.length + " instructions executed (of " + count + " total):");
+
+        for (long entry : history) {
+            out.println("    " + TraceEntry.format(entry));
+        }
+    }
+
+}
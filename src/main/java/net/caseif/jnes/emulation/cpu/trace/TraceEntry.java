@@ -0,0 +1,92 @@
+/*
+ * This file is a part of jNES.
+ * Copyright (c) 2018-2019, Max Roncace <mproncace@gmail.com>
+ *
+ * The MIT License
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package net.caseif.jnes.emulation.cpu.trace;
+
+import net.caseif.jnes.model.cpu.Instruction;
+
+/**
+ * Utility methods for trace entries, which pack the program counter, opcode
+ * and register state prior to an instruction into a single {@code long}.
+ *
+ * <p>Layout, from most to least significant: PC (16 bits), opcode, A, X, Y,
+ * SP and P (8 bits each).</p>
+ */
+public final class TraceEntry {
+
+    private TraceEntry() {
+    }
+
+    public static long pack(int pc, int opcode, int acc, int x, int y, int sp, int status) {
+        return ((long) (pc & 0xFFFF) << 48)
+                | ((long) (opcode & 0xFF) << 40)
+                | ((long) (acc & 0xFF) << 32)
+                | ((long) (x & 0xFF) << 24)
+                | ((y & 0xFF) << 16)
+                | ((sp & 0xFF) << 8)
+                | (status & 0xFF);
+    }
+
+    public static int getPc(long entry) {
+        return (int) (entry >>> 48);
+    }
+
+    public static int getOpcode(long entry) {
+        return (int) (entry >>> 40) & 0xFF;
+    }
+
+    public static int getAcc(long entry) {
+        return (int) (entry >>> 32) & 0xFF;
+    }
+
+    public static int getX(long entry) {
+        return (int) (entry >>> 24) & 0xFF;
+    }
+
+    public static int getY(long entry) {
+        return (int) (entry >>> 16) & 0xFF;
+    }
+
+    public static int getSp(long entry) {
+        return (int) (entry >>> 8) & 0xFF;
+    }
+
+    public static int getStatus(long entry) {
+        return (int) entry & 0xFF;
+    }
+
+    public static String format(long entry) {
+        return String.format("$%04X  %02X  %-7s  A:%02X X:%02X Y:%02X P:%02X SP:%02X",
+                getPc(entry),
+                getOpcode(entry),
+                Instruction.fromOpcode((byte) getOpcode(entry)),
+                getAcc(entry),
+                getX(entry),
+                getY(entry),
+                getStatus(entry),
+                getSp(entry));
+    }
+
+}
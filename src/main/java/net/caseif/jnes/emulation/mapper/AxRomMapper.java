@@ -0,0 +1,57 @@
+/*
+ * This file is a part of jNES.
+ * Copyright (c) 2018-2019, Max Roncace <mproncace@gmail.com>
+ *
+ * The MIT License
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package net.caseif.jnes.emulation.mapper;
+
+import net.caseif.jnes.model.Cartridge;
+
+/**
+ * Mapper 7, which switches all 32KB of PRG at once and selects a single
+ * nametable for all four slots.
+ */
+class AxRomMapper extends BaseMapper {
+
+    private static final int BANK_SIZE = 0x8000;
+
+    AxRomMapper(Cartridge cart) {
+        super(cart);
+    }
+
+    @Override
+    protected void reset() {
+        mapPrg(0x8000, BANK_SIZE, 0);
+        mapChr(0x0000, 0x2000, 0);
+        setMirroring(Cartridge.MirroringMode.SINGLE_SCREEN_LOWER);
+    }
+
+    @Override
+    public void write(int addr, byte value) {
+        mapPrg(0x8000, BANK_SIZE, value & 0b111);
+        setMirroring((value & 0b10000) == 0
+                ? Cartridge.MirroringMode.SINGLE_SCREEN_LOWER
+                : Cartridge.MirroringMode.SINGLE_SCREEN_UPPER);
+    }
+
+}
@@ -0,0 +1,141 @@
+/*
+ * This file is a part of jNES.
+ * Copyright (c) 2018-2019, Max Roncace <mproncace@gmail.com>
+ *
+ * The MIT License
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package net.caseif.jnes.emulation.mapper;
+
+import net.caseif.jnes.emulation.cpu.CpuInterpreter;
+import net.caseif.jnes.emulation.cpu.CpuMemory;
+import net.caseif.jnes.emulation.ppu.PpuMemory;
+import net.caseif.jnes.model.Cartridge;
+
+/**
+ * Base for mappers which take writes to $8000-$FFFF as register writes.
+ */
+abstract class BaseMapper implements Mapper, CpuMemory.IoHandler {
+
+    // PRG RAM is mapped at $6000-$7FFF
+    private static final int PRG_RAM_PAGE = 0x60;
+    private static final int PRG_RAM_PAGES = 0x20;
+    private static final int PAGE_SIZE = 0x100;
+
+    protected final Cartridge cart;
+    protected final byte[] prg;
+    private final byte[] prgRam;
+
+    protected CpuInterpreter cpu;
+    protected CpuMemory cpuMemory;
+    protected PpuMemory ppuMemory;
+
+    BaseMapper(Cartridge cart) {
+        this.cart = cart;
+        this.prg = cart.getPrgRom();
+
+        // allocate only the RAM the board has, though never less than a page
+        // since that's the smallest unit which can be mapped
+        int ramSize = cart.getPrgRamSize() + cart.getPrgNvramSize();
+        this.prgRam = new byte[ramSize == 0 ? 0 : Math.max(ramSize, PAGE_SIZE)];
+    }
+
+    @Override
+    public void attach(CpuInterpreter cpu) {
+        this.cpu = cpu;
+        this.cpuMemory = cpu.getMemory();
+        this.ppuMemory = cpu.getPpu().getMemory();
+
+        // boards without PRG RAM leave $6000-$7FFF unmapped, and those with
+        // less than 8KB mirror it
+        if (prgRam.length > 0) {
+            for (int i = 0; i < PRG_RAM_PAGES; i++) {
+                cpuMemory.mapMemory(PRG_RAM_PAGE + i, 1, prgRam, (i * PAGE_SIZE) % prgRam.length, true);
+            }
+        }
+        // ROM is read-only, so writes to it reach the mapper's registers
+        cpuMemory.setWriteHandler(0x80, 0x80, this);
+
+        reset();
+    }
+
+    /**
+     * Maps the banks selected at power-on.
+     */
+    protected abstract void reset();
+
+    @Override
+    public byte read(int addr) {
+        // ROM pages are always backed by PRG, so this is never reached
+        return 0;
+    }
+
+    /**
+     * Maps a bank of PRG ROM into the CPU's address space.
+     *
+     * @param addr The address to map the bank at, which must be a multiple
+     *     of its size
+     * @param size The size of the bank in bytes
+     * @param bank The index of the bank, which wraps around if it exceeds the
+     *     number of banks of the given size
+     */
+    protected void mapPrg(int addr, int size, int bank) {
+        int offset = Math.floorMod(bank * size, prg.length);
+        if (offset + size <= prg.length) {
+            cpuMemory.mapMemory(addr >> 8, size >> 8, prg, offset, false);
+        } else {
+            // PRG is smaller than the bank, so mirror it within the window
+            for (int i = 0; i < size; i += 0x100) {
+                cpuMemory.mapMemory((addr + i) >> 8, 1, prg, (offset + i) % prg.length, false);
+            }
+        }
+    }
+
+    /**
+     * Maps a bank of CHR into the pattern tables.
+     *
+     * @param addr The address to map the bank at, which must be a multiple
+     *     of its size
+     * @param size The size of the bank in bytes
+     * @param bank The index of the bank, which wraps around if it exceeds the
+     *     number of banks of the given size
+     */
+    protected void mapChr(int addr, int size, int bank) {
+        ppuMemory.mapChr(addr, size, Math.floorMod(bank * size, ppuMemory.getChrSize()));
+    }
+
+    /**
+     * Sets the nametable mirroring, unless the cartridge provides its own
+     * four-screen VRAM.
+     *
+     * @param mode The new mirroring mode
+     */
+    protected void setMirroring(Cartridge.MirroringMode mode) {
+        if (!cart.doesIgnoreMirroringControl()) {
+            ppuMemory.setMirroringMode(mode);
+        }
+    }
+
+    protected int getPrgBankCount(int size) {
+        return Math.max(prg.length / size, 1);
+    }
+
+}
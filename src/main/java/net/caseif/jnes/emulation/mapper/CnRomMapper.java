@@ -0,0 +1,53 @@
+/*
+ * This file is a part of jNES.
+ * Copyright (c) 2018-2019, Max Roncace <mproncace@gmail.com>
+ *
+ * The MIT License
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package net.caseif.jnes.emulation.mapper;
+
+import net.caseif.jnes.model.Cartridge;
+
+/**
+ * Mapper 3, which switches the whole 8KB of CHR.
+ */
+class CnRomMapper extends BaseMapper {
+
+    private static final int BANK_SIZE = 0x2000;
+
+    CnRomMapper(Cartridge cart) {
+        super(cart);
+    }
+
+    @Override
+    protected void reset() {
+        mapPrg(0x8000, 0x4000, 0);
+        mapPrg(0xC000, 0x4000, 1);
+        mapChr(0x0000, BANK_SIZE, 0);
+    }
+
+    @Override
+    public void write(int addr, byte value) {
+        mapChr(0x0000, BANK_SIZE, value & 0xFF);
+    }
+
+}
@@ -0,0 +1,80 @@
+/*
+ * This file is a part of jNES.
+ * Copyright (c) 2018-2019, Max Roncace <mproncace@gmail.com>
+ *
+ * The MIT License
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package net.caseif.jnes.emulation.mapper;
+
+import net.caseif.jnes.emulation.cpu.CpuInterpreter;
+import net.caseif.jnes.emulation.cpu.CpuMemory;
+import net.caseif.jnes.emulation.ppu.PpuMemory;
+import net.caseif.jnes.model.Cartridge;
+
+/**
+ * The cartridge hardware which determines what is mapped into the CPU's and
+ * PPU's address spaces.
+ *
+ * <p>A mapper owns the PRG windows of {@link CpuMemory} from $6000 up and the
+ * pattern table windows of {@link PpuMemory}. Bank switches remap these
+ * windows through the memories' page and slot tables, so no data is ever
+ * copied.</p>
+ */
+public interface Mapper {
+
+    /**
+     * Creates the mapper used by the given cartridge.
+     *
+     * @param cart The cartridge to create a mapper for
+     * @return The new mapper
+     * @throws IllegalArgumentException If the cartridge's mapper is not
+     *     supported
+     */
+    static Mapper forCartridge(Cartridge cart) {
+        int id = cart.getMapper();
+        switch (id) {
+            case 0:
+                return new NromMapper(cart);
+            case 1:
+                return new Mmc1Mapper(cart);
+            case 2:
+                return new UxRomMapper(cart);
+            case 3:
+                return new CnRomMapper(cart);
+            case 4:
+                return new Mmc3Mapper(cart);
+            case 7:
+                return new AxRomMapper(cart);
+            default:
+                throw new IllegalArgumentException("Unsupported mapper " + id + ".");
+        }
+    }
+
+    /**
+     * Maps the cartridge's initial banks and registers into the memories of
+     * the given CPU and its PPU.
+     *
+     * @param cpu The CPU to attach to
+     */
+    void attach(CpuInterpreter cpu);
+
+}
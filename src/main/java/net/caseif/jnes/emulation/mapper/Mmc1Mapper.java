@@ -0,0 +1,159 @@
+/*
+ * This file is a part of jNES.
+ * Copyright (c) 2018-2019, Max Roncace <mproncace@gmail.com>
+ *
+ * The MIT License
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package net.caseif.jnes.emulation.mapper;
+
+import net.caseif.jnes.model.Cartridge;
+
+/**
+ * Mapper 1 (MMC1), whose registers are written a bit at a time through a
+ * serial shift register.
+ */
+class Mmc1Mapper extends BaseMapper {
+
+    private static final int PRG_BANK_SIZE = 0x4000;
+    private static final int CHR_BANK_SIZE = 0x1000;
+    // the second 256KB of 512KB boards is selected through the CHR registers
+    private static final int OUTER_PRG_SIZE = 0x40000;
+
+    private int shift;
+    private int shiftCount;
+
+    private int control;
+    private int chrBank0;
+    private int chrBank1;
+    private int prgBank;
+
+    Mmc1Mapper(Cartridge cart) {
+        super(cart);
+    }
+
+    @Override
+    protected void reset() {
+        shift = 0;
+        shiftCount = 0;
+        // the last PRG bank is fixed at $C000 on power-on
+        control = 0x0C;
+        chrBank0 = 0;
+        chrBank1 = 0;
+        prgBank = 0;
+
+        updateBanks();
+    }
+
+    @Override
+    public void write(int addr, byte value) {
+        if ((value & 0x80) != 0) {
+            // writing bit 7 resets the shift register and fixes the last bank
+            shift = 0;
+            shiftCount = 0;
+            control |= 0x0C;
+            updateBanks();
+            return;
+        }
+
+        // bits are shifted in starting with the least significant
+        shift |= (value & 1) << shiftCount;
+        if (++shiftCount < 5) {
+            return;
+        }
+
+        // the fifth write selects the register by its address
+        switch ((addr >> 13) & 0b11) {
+            case 0:
+                control = shift;
+                break;
+            case 1:
+                chrBank0 = shift;
+                break;
+            case 2:
+                chrBank1 = shift;
+                break;
+            case 3:
+                prgBank = shift;
+                break;
+            default:
+                throw new AssertionError();
+        }
+
+        shift = 0;
+        shiftCount = 0;
+
+        updateBanks();
+    }
+
+    private void updateBanks() {
+        switch (control & 0b11) {
+            case 0:
+                setMirroring(Cartridge.MirroringMode.SINGLE_SCREEN_LOWER);
+                break;
+            case 1:
+                setMirroring(Cartridge.MirroringMode.SINGLE_SCREEN_UPPER);
+                break;
+            case 2:
+                setMirroring(Cartridge.MirroringMode.VERTICAL);
+                break;
+            case 3:
+                setMirroring(Cartridge.MirroringMode.HORIZONTAL);
+                break;
+            default:
+                throw new AssertionError();
+        }
+
+        // first 16KB bank of the selected 256KB half
+        int outer = prg.length > OUTER_PRG_SIZE ? (chrBank0 & 0x10) : 0;
+        int bank = outer | (prgBank & 0x0F);
+
+        switch ((control >> 2) & 0b11) {
+            case 0:
+            case 1:
+                // 32KB mode ignores the low bit of the bank
+                mapPrg(0x8000, PRG_BANK_SIZE * 2, bank >> 1);
+                break;
+            case 2:
+                // first bank fixed at $8000
+                mapPrg(0x8000, PRG_BANK_SIZE, outer);
+                mapPrg(0xC000, PRG_BANK_SIZE, bank);
+                break;
+            case 3:
+                // last bank fixed at $C000
+                mapPrg(0x8000, PRG_BANK_SIZE, bank);
+                mapPrg(0xC000, PRG_BANK_SIZE, outer | 0x0F);
+                break;
+            default:
+                throw new AssertionError();
+        }
+
+        if ((control & 0x10) != 0) {
+            // two separate 4KB banks
+            mapChr(0x0000, CHR_BANK_SIZE, chrBank0);
+            mapChr(0x1000, CHR_BANK_SIZE, chrBank1);
+        } else {
+            // 8KB mode ignores the low bit of the bank
+            mapChr(0x0000, CHR_BANK_SIZE * 2, chrBank0 >> 1);
+        }
+    }
+
+}
@@ -0,0 +1,175 @@
+/*
+ * This file is a part of jNES.
+ * Copyright (c) 2018-2019, Max Roncace <mproncace@gmail.com>
+ *
+ * The MIT License
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package net.caseif.jnes.emulation.mapper;
+
+import net.caseif.jnes.emulation.cpu.CpuInterpreter;
+import net.caseif.jnes.emulation.ppu.A12Listener;
+import net.caseif.jnes.model.Cartridge;
+
+import java.util.Arrays;
+
+/**
+ * Mapper 4 (MMC3), which switches 8KB PRG and 1-2KB CHR banks through eight
+ * bank registers, and counts scanlines by the PPU's A12 line in order to
+ * raise an IRQ.
+ */
+class Mmc3Mapper extends BaseMapper implements A12Listener {
+
+    private static final int PRG_BANK_SIZE = 0x2000;
+
+    // the register written by the next bank data write, and the PRG and CHR
+    // layouts
+    private int bankSelect;
+    private final int[] banks = new int[8];
+
+    private int irqLatch;
+    private int irqCounter;
+    private boolean irqReload;
+    private boolean irqEnabled;
+
+    Mmc3Mapper(Cartridge cart) {
+        super(cart);
+    }
+
+    @Override
+    public void attach(CpuInterpreter cpu) {
+        super.attach(cpu);
+
+        cpu.getPpu().setA12Listener(this);
+    }
+
+    @Override
+    protected void reset() {
+        bankSelect = 0;
+        Arrays.fill(banks, 0);
+
+        irqLatch = 0;
+        irqCounter = 0;
+        irqReload = false;
+        irqEnabled = false;
+
+        updateBanks();
+    }
+
+    @Override
+    public void write(int addr, byte value) {
+        // make sure the counter has seen every A12 rise before this write
+        cpu.syncPpu();
+
+        int val = value & 0xFF;
+        // registers are selected by the range and whether the address is odd
+        boolean odd = (addr & 1) != 0;
+        switch ((addr >> 13) & 0b11) {
+            case 0:
+                if (odd) {
+                    banks[bankSelect & 0b111] = val;
+                } else {
+                    bankSelect = val;
+                }
+                updateBanks();
+                break;
+            case 1:
+                // the odd register protects PRG RAM, which isn't emulated
+                if (!odd) {
+                    setMirroring((val & 1) != 0
+                            ? Cartridge.MirroringMode.HORIZONTAL
+                            : Cartridge.MirroringMode.VERTICAL);
+                }
+                break;
+            case 2:
+                if (odd) {
+                    // the counter is reloaded at the next rise
+                    irqCounter = 0;
+                    irqReload = true;
+                } else {
+                    irqLatch = val;
+                }
+                break;
+            case 3:
+                irqEnabled = odd;
+                if (!odd) {
+                    // disabling also acknowledges a pending IRQ
+                    cpu.setIrqLine(CpuInterpreter.IRQ_SOURCE_MAPPER, false);
+                }
+                break;
+            default:
+                throw new AssertionError();
+        }
+
+        cpu.getPpu().refreshNextEvent();
+    }
+
+    @Override
+    public void onA12Rise() {
+        if (irqCounter == 0 || irqReload) {
+            irqCounter = irqLatch;
+            irqReload = false;
+        } else {
+            irqCounter--;
+        }
+
+        if (irqCounter == 0 && irqEnabled) {
+            cpu.setIrqLine(CpuInterpreter.IRQ_SOURCE_MAPPER, true);
+        }
+    }
+
+    @Override
+    public int getRisesUntilVisible() {
+        if (!irqEnabled) {
+            return 0;
+        } else if (irqCounter == 0 || irqReload) {
+            // the counter is reloaded first, and an IRQ is raised on every
+            // rise if the latch is 0
+            return irqLatch == 0 ? 1 : irqLatch + 1;
+        } else {
+            return irqCounter;
+        }
+    }
+
+    private void updateBanks() {
+        int secondLast = getPrgBankCount(PRG_BANK_SIZE) - 2;
+        if ((bankSelect & 0x40) == 0) {
+            mapPrg(0x8000, PRG_BANK_SIZE, banks[6]);
+            mapPrg(0xC000, PRG_BANK_SIZE, secondLast);
+        } else {
+            // the second-last bank is fixed at $8000 instead
+            mapPrg(0x8000, PRG_BANK_SIZE, secondLast);
+            mapPrg(0xC000, PRG_BANK_SIZE, banks[6]);
+        }
+        mapPrg(0xA000, PRG_BANK_SIZE, banks[7]);
+        mapPrg(0xE000, PRG_BANK_SIZE, secondLast + 1);
+
+        // the 2KB banks are at $0000 and the 1KB ones at $1000, unless
+        // inverted; the 2KB registers ignore their low bit
+        int inversion = (bankSelect & 0x80) << 5;
+        mapChr(inversion, 0x800, banks[0] >> 1);
+        mapChr(inversion | 0x800, 0x800, banks[1] >> 1);
+        for (int i = 0; i < 4; i++) {
+            mapChr((inversion ^ 0x1000) | (i * 0x400), 0x400, banks[2 + i]);
+        }
+    }
+
+}
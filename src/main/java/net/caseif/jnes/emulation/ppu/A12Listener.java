@@ -0,0 +1,53 @@
+/*
+ * This file is a part of jNES.
+ * Copyright (c) 2018-2019, Max Roncace <mproncace@gmail.com>
+ *
+ * The MIT License
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package net.caseif.jnes.emulation.ppu;
+
+/**
+ * A listener for rising edges of the PPU's A12 address line, which mappers
+ * such as MMC3 use to count scanlines.
+ *
+ * <p>While rendering, A12 reflects the pattern table being fetched from, so
+ * it rises once per scanline when the background and sprites use different
+ * tables.</p>
+ */
+public interface A12Listener {
+
+    /**
+     * Called when A12 rises.
+     */
+    void onA12Rise();
+
+    /**
+     * Gets the number of rises after which the listener will next change
+     * state visible to the CPU, such as by asserting an IRQ. The PPU uses
+     * this to predict its next event.
+     *
+     * @return The number of rises, counting the one which causes the change,
+     *     or 0 if no number of rises would cause one
+     */
+    int getRisesUntilVisible();
+
+}
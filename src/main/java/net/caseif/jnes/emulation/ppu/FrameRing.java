@@ -0,0 +1,276 @@
+/*
+ * This file is a part of jNES.
+ * Copyright (c) 2018-2019, Max Roncace <mproncace@gmail.com>
+ *
+ * The MIT License
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package net.caseif.jnes.emulation.ppu;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A lock-free ring of completed frames, handed off from the emulation thread
+ * to a single consumer thread.
+ *
+ * <p>Frames are copied into a fixed pool of buffers, which the consumer
+ * returns with {@link #release(Frame)} once done with them, so nothing is
+ * allocated per frame. When no buffer is free, the frame is handled according
+ * to the ring's {@link OverflowPolicy}.</p>
+ */
+public class FrameRing {
+
+    // how long to park for between checks while waiting
+    private static final long PARK_NANOS = 50000;
+
+    private final OverflowPolicy policy;
+
+    // frames published but not yet taken by the consumer
+    private final Ring<Frame> filled;
+    // frames released by the consumer and available for reuse
+    private final Ring<Frame> free;
+
+    private volatile long droppedFrames = 0;
+
+    /**
+     * Creates a new ring.
+     *
+     * @param capacity The number of frame buffers in the pool
+     * @param policy What to do with a frame when no buffer is free
+     */
+    public FrameRing(int capacity, OverflowPolicy policy) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be positive.");
+        }
+
+        this.policy = policy;
+        this.filled = new Ring<>(capacity);
+        this.free = new Ring<>(capacity);
+
+        for (int i = 0; i < capacity; i++) {
+            free.offer(new Frame());
+        }
+    }
+
+    public OverflowPolicy getPolicy() {
+        return policy;
+    }
+
+    /**
+     * Gets the number of frames which were discarded because the consumer fell
+     * behind, whether they were the oldest or the newest.
+     *
+     * @return The number of dropped frames
+     */
+    public long getDroppedFrames() {
+        return droppedFrames;
+    }
+
+    /**
+     * Publishes a frame. This must only be called from the producing thread.
+     *
+     * @param pixels The colors of the frame's pixels
+     * @param colorModes The color mode of each scanline of the frame
+     * @param number The number of the frame
+     */
+    void publish(byte[] pixels, byte[] colorModes, long number) {
+        Frame frame = free.poll();
+
+        if (frame == null) {
+            switch (policy) {
+                case DROP_OLDEST:
+                    // reuse the oldest frame the consumer hasn't taken yet
+                    frame = filled.poll();
+                    if (frame != null) {
+                        droppedFrames++;
+                    }
+                    break;
+                case BLOCK:
+                    while ((frame = free.poll()) == null) {
+                        LockSupport.parkNanos(PARK_NANOS);
+                    }
+                    break;
+                case SKIP:
+                    break;
+                default:
+                    throw new AssertionError();
+            }
+
+            if (frame == null) {
+                // all buffers are held by the consumer
+                droppedFrames++;
+                return;
+            }
+        }
+
+        System.arraycopy(pixels, 0, frame.pixels, 0, frame.pixels.length);
+        System.arraycopy(colorModes, 0, frame.colorModes, 0, frame.colorModes.length);
+        frame.number = number;
+
+        filled.offer(frame);
+    }
+
+    /**
+     * Takes the oldest published frame, if any.
+     *
+     * <p>The frame must be passed to {@link #release(Frame)} once the consumer
+     * is done with it.</p>
+     *
+     * @return The oldest frame, or {@code null} if none is available
+     */
+    public Frame poll() {
+        return filled.poll();
+    }
+
+    /**
+     * Takes the oldest published frame, waiting for one if necessary.
+     *
+     * @return The oldest frame
+     * @throws InterruptedException If the thread is interrupted while waiting
+     */
+    public Frame take() throws InterruptedException {
+        Frame frame;
+        while ((frame = filled.poll()) == null) {
+            LockSupport.parkNanos(PARK_NANOS);
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+        }
+        return frame;
+    }
+
+    /**
+     * Returns a frame to the pool once the consumer is done with it.
+     *
+     * @param frame The frame to release
+     */
+    public void release(Frame frame) {
+        free.offer(frame);
+    }
+
+    /**
+     * What to do with a completed frame when the consumer has fallen behind
+     * and no buffer is free.
+     */
+    public enum OverflowPolicy {
+        /**
+         * Discard the oldest frame not yet taken, and publish the new one in
+         * its place.
+         */
+        DROP_OLDEST,
+        /**
+         * Stall emulation until the consumer releases a frame.
+         */
+        BLOCK,
+        /**
+         * Discard the new frame.
+         */
+        SKIP
+    }
+
+    /**
+     * A completed frame, as seen by the consumer.
+     */
+    public static class Frame {
+
+        private final byte[] pixels = new byte[PpuEmulator.SCREEN_WIDTH * PpuEmulator.SCREEN_HEIGHT];
+        private final byte[] colorModes = new byte[PpuEmulator.SCREEN_HEIGHT];
+        private long number;
+
+        private Frame() {
+        }
+
+        /**
+         * Gets the colors of the frame's pixels, in the same format as
+         * {@link PpuEmulator#getFrameBuffer()}.
+         *
+         * @return The frame's pixels
+         */
+        public byte[] getPixels() {
+            return pixels;
+        }
+
+        /**
+         * Gets the color mode of each scanline, in the same format as
+         * {@link PpuEmulator#getFrameColorModes()}.
+         *
+         * @return The color modes of the frame
+         */
+        public byte[] getColorModes() {
+            return colorModes;
+        }
+
+        /**
+         * Gets the number of the frame, counting from 1 at power-on.
+         *
+         * @return The frame number
+         */
+        public long getNumber() {
+            return number;
+        }
+
+    }
+
+    // a bounded ring with a single offering thread, which any thread may
+    // poll from
+    private static class Ring<T> {
+
+        private final Object[] slots;
+        // the next index to poll from, advanced by compare-and-set since
+        // both threads may poll
+        private final AtomicLong head = new AtomicLong();
+        // the next index to offer to, only advanced by the offering thread
+        private final AtomicLong tail = new AtomicLong();
+
+        private Ring(int capacity) {
+            this.slots = new Object[capacity];
+        }
+
+        private void offer(T value) {
+            long t = tail.get();
+            // can't overflow, since there are only as many frames as slots
+            assert t - head.get() < slots.length;
+
+            slots[(int) (t % slots.length)] = value;
+            // publishes the slot along with the index
+            tail.lazySet(t + 1);
+        }
+
+        @SuppressWarnings("unchecked")
+        private T poll() {
+            while (true) {
+                long h = head.get();
+                if (h == tail.get()) {
+                    return null;
+                }
+
+                T value = (T) slots[(int) (h % slots.length)];
+                // the slot can only have been reused if head has moved on
+                if (head.compareAndSet(h, h + 1)) {
+                    return value;
+                }
+            }
+        }
+
+    }
+
+}
@@ -67,4 +67,14 @@ public class PpuControl {
         this.emBlue         = (serial & 0b10000000) != 0;
     }
 
+    /**
+     * Gets the grayscale and emphasis bits of PPUMASK, packed as an index
+     * into the color modes of an {@link RgbPalette}.
+     *
+     * @return The current color mode
+     */
+    public int getColorMode() {
+        return (grayscale ? 1 : 0) | (emRed ? 0b10 : 0) | (emGreen ? 0b100 : 0) | (emBlue ? 0b1000 : 0);
+    }
+
 }
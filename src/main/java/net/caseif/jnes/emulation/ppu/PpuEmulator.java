@@ -26,123 +26,836 @@
 package net.caseif.jnes.emulation.ppu;
 
 import net.caseif.jnes.emulation.cpu.CpuInterpreter;
+import net.caseif.jnes.model.Cartridge;
 import net.caseif.jnes.model.cpu.InterruptType;
 
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
 public class PpuEmulator {
 
+    public static final int SCREEN_WIDTH = 256;
+    public static final int SCREEN_HEIGHT = 240;
+
+    // master clock cycles per PPU dot
+    public static final int MASTER_CYCLES_PER_DOT = 4;
+
     private static final int TOTAL_SCANLINES = 262;
     private static final int VISIBLE_SCANLINES = 240;
+    private static final int PRE_RENDER_SCANLINE = TOTAL_SCANLINES - 1;
     private static final int CYCLES_PER_SCANLINE = 341;
 
+    private static final int OAM_SIZE = 256;
+    private static final int MAX_SPRITES_PER_SCANLINE = 8;
+
+    // dots at which A12 takes the level of the sprite and background pattern
+    // tables respectively, as the fetches from them begin
+    private static final int SPRITE_A12_DOT = 260;
+    private static final int BACKGROUND_A12_DOT = 324;
+    // scanlines on which pattern fetches occur
+    private static final int FETCH_SCANLINES = VISIBLE_SCANLINES + 1;
+
+    // inputs making up the key of each scanline - see buildLineKey
+    private static final int LINE_KEY_SIZE = 7 + MAX_SPRITES_PER_SCANLINE * 3;
+
+    private static final long HASH_SEED = 0x27D4EB2F165667C5L;
+    // reads frames 8 bytes at a time while hashing them
+    private static final VarHandle LONG_VIEW
+            = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+
     private final CpuInterpreter cpu;
 
     private final PpuMmioRegisters mmioRegs = new PpuMmioRegisters();
     private final PpuInternalRegisters internalRegs = new PpuInternalRegisters();
     private final PpuStatus status = new PpuStatus();
-    private final PpuMemory memory = new PpuMemory();
+    private final PpuMemory memory;
 
     private int scanlineCycle = 0;
     private int scanline = 0;
     private boolean oddFrame = false;
-
-    public PpuEmulator(CpuInterpreter cpu) {
+    // number of frames completed since power-on
+    private long frameCount = 0;
+    // number of dots executed since power-on
+    private long dotClock = 0;
+    // the next event at which the PPU's state becomes visible to the CPU
+    // without it accessing the PPU, and its master clock time
+    private PpuEvent nextEvent;
+    private long nextEventTime;
+
+    // latches filled by the background fetches
+    private int ntLatch;
+    private int atLatch;
+    private int patternLatch;
+
+    // background shift registers, holding 2 bits per pixel - the high half
+    // holds the tile being drawn, the low half the one after it
+    private int patternShift;
+    private int attribShift;
+
+    private final byte[] oam = new byte[OAM_SIZE];
+
+    // sprites selected by evaluation to be drawn on the current scanline, in
+    // priority order, with their pattern rows already fetched and flipped
+    private int spriteCount;
+    private final int[] spriteRows = new int[MAX_SPRITES_PER_SCANLINE];
+    private final int[] spriteXs = new int[MAX_SPRITES_PER_SCANLINE];
+    private final int[] spriteAttribs = new int[MAX_SPRITES_PER_SCANLINE];
+    // whether the first selected sprite is sprite 0
+    private boolean spriteZeroSelected;
+
+    // buffered value returned by PPUDATA reads
+    private byte readBuffer;
+
+    // frames are rendered into the back buffer, which is swapped with the
+    // front buffer once complete
+    private byte[] frontBuffer = new byte[SCREEN_WIDTH * SCREEN_HEIGHT];
+    private byte[] backBuffer = new byte[SCREEN_WIDTH * SCREEN_HEIGHT];
+    // color mode of each scanline of the respective buffers
+    private byte[] frontColorModes = new byte[SCREEN_HEIGHT];
+    private byte[] backColorModes = new byte[SCREEN_HEIGHT];
+
+    // whether scanlines with the same inputs as in the previous frame are
+    // copied from it rather than rendered
+    private boolean scanlineReuse = true;
+    // inputs of each scanline as of its last rendering
+    private final int[] lineKeys = new int[VISIBLE_SCANLINES * LINE_KEY_SIZE];
+    private final int[] currentKey = new int[LINE_KEY_SIZE];
+    // whether each scanline of the front buffer can be reused if its key
+    // matches, i.e. whether its inputs were unchanged while it was rendered
+    private final boolean[] lineReusable = new boolean[VISIBLE_SCANLINES];
+    // whether the current scanline was copied from the previous frame
+    private boolean reusingLine;
+    // change count as of the first fetch for the current scanline
+    private int lineChangeCount;
+    // number of register accesses which may affect rendering
+    private int registerChanges = 0;
+    // number of scanlines copied from the previous frame since power-on
+    long reusedScanlines = 0;
+
+    // listener for rises of A12, if any, and the line's current level
+    private A12Listener a12Listener;
+    private boolean a12High;
+
+    // ring to publish completed frames to, if any
+    private FrameRing frameRing;
+
+    private boolean frameHashing = false;
+    // hashes of the frames completed since hashing was enabled
+    private long[] frameHashes = new long[64];
+    private int frameHashCount = 0;
+
+    public PpuEmulator(CpuInterpreter cpu, Cartridge cart) {
         this.cpu = cpu;
+        this.memory = new PpuMemory(cart);
+
+        updateNextEvent();
+    }
+
+    public PpuMemory getMemory() {
+        return memory;
+    }
+
+    public long getFrameCount() {
+        return frameCount;
+    }
+
+    /**
+     * Gets the most recently completed frame.
+     *
+     * <p>Each byte holds the 6-bit color of a pixel, row by row from the
+     * top-left corner of the screen. The returned array is reused, and its
+     * contents will be replaced once the next frame is complete.</p>
+     *
+     * @return The most recently completed frame
+     */
+    public byte[] getFrameBuffer() {
+        return frontBuffer;
+    }
+
+    /**
+     * Gets the color mode of each scanline of the most recently completed
+     * frame, for use with {@link RgbPalette#toArgb(byte[], byte[], int[])}.
+     *
+     * <p>The grayscale and emphasis bits are sampled at the start of each
+     * scanline. Like the frame buffer, the returned array is reused.</p>
+     *
+     * @return The color mode of each scanline
+     */
+    public byte[] getFrameColorModes() {
+        return frontColorModes;
+    }
+
+    public boolean isScanlineReuseEnabled() {
+        return scanlineReuse;
+    }
+
+    /**
+     * Sets whether scanlines are copied from the previous frame instead of
+     * being rendered again when none of their inputs have changed.
+     *
+     * <p>This does not affect the output of the PPU or the timing of its
+     * flags and interrupts, and is enabled by default.</p>
+     *
+     * @param enabled Whether scanlines may be reused
+     */
+    public void setScanlineReuseEnabled(boolean enabled) {
+        this.scanlineReuse = enabled;
+        if (!enabled) {
+            Arrays.fill(lineReusable, false);
+        }
+    }
+
+    public FrameRing getFrameRing() {
+        return frameRing;
+    }
+
+    /**
+     * Sets the ring which each completed frame is published to, for
+     * consumption by another thread.
+     *
+     * @param frameRing The ring to publish frames to, or {@code null} to stop
+     *     publishing them
+     */
+    public void setFrameRing(FrameRing frameRing) {
+        this.frameRing = frameRing;
+    }
+
+    public A12Listener getA12Listener() {
+        return a12Listener;
+    }
+
+    /**
+     * Sets the listener notified of each rise of A12 caused by pattern
+     * fetches.
+     *
+     * <p>A12 is taken to follow the sprite table from dot 260 and the
+     * background table from dot 324 of each rendering scanline; with 8x16
+     * sprites it is always high for the sprite fetches.</p>
+     *
+     * @param listener The listener, or {@code null} for none
+     */
+    public void setA12Listener(A12Listener listener) {
+        this.a12Listener = listener;
+        updateNextEvent();
+    }
+
+    public boolean isFrameHashingEnabled() {
+        return frameHashing;
+    }
+
+    /**
+     * Sets whether a hash is computed of each frame as it is completed.
+     *
+     * <p>Enabling hashing clears any previously recorded hashes.</p>
+     *
+     * @param enabled Whether frames should be hashed
+     */
+    public void setFrameHashingEnabled(boolean enabled) {
+        if (enabled && !frameHashing) {
+            frameHashCount = 0;
+        }
+        this.frameHashing = enabled;
+    }
+
+    /**
+     * Gets the hashes of the frames completed since frame hashing was
+     * enabled, in order of completion.
+     *
+     * <p>Each hash covers both the colors of the frame and the color mode of
+     * each of its scanlines.</p>
+     *
+     * @return The recorded frame hashes
+     */
+    public long[] getFrameHashes() {
+        return Arrays.copyOf(frameHashes, frameHashCount);
     }
 
     public void tick() {
         performCycle();
 
         advanceCounters();
+
+        dotClock++;
     }
 
-    private void performCycle() {
+    /**
+     * Runs the PPU until it reaches the given master clock time.
+     *
+     * @param masterClock The master clock time to run to
+     */
+    public void catchUp(long masterClock) {
+        long target = masterClock / MASTER_CYCLES_PER_DOT;
+        while (dotClock < target) {
+            tick();
+        }
+
+        updateNextEvent();
+    }
+
+    /**
+     * Gets the next event at which the PPU's state may become visible
+     * without the CPU accessing it.
+     *
+     * <p>This is only kept up to date by {@link #catchUp(long)}, by register
+     * writes and by OAM DMA, since it is only meaningful for lazy
+     * scheduling.</p>
+     *
+     * @return The next event
+     */
+    public PpuEvent getNextEvent() {
+        return nextEvent;
+    }
+
+    /**
+     * Gets the master clock time of the dot at which the
+     * {@link #getNextEvent() next event} occurs. A CPU may run until this
+     * time without the PPU being run.
+     *
+     * @return The master clock time of the next event
+     */
+    public long getNextEventTime() {
+        return nextEventTime;
+    }
+
+    /**
+     * Recomputes the next event after state outside of the PPU which it
+     * depends on has changed, such as that of its {@link A12Listener}.
+     */
+    public void refreshNextEvent() {
+        updateNextEvent();
+    }
+
+    private void updateNextEvent() {
+        PpuEvent event = PpuEvent.FRAME_COMPLETE;
+        int dots = dotsUntil(VISIBLE_SCANLINES - 1, CYCLES_PER_SCANLINE - 1);
+
+        int vblankDots = dotsUntil(241, 1);
+        if (vblankDots < dots) {
+            event = PpuEvent.VBLANK_START;
+            dots = vblankDots;
+        }
+
+        // the last dot of the pre-render scanline is skipped on odd frames, so
+        // use the one before it
+        int preRenderDots = dotsUntil(PRE_RENDER_SCANLINE, CYCLES_PER_SCANLINE - 2);
+        if (preRenderDots < dots) {
+            event = PpuEvent.PRE_RENDER_END;
+            dots = preRenderDots;
+        }
+
+        int spriteZeroDots = dotsUntilSpriteZeroHit();
+        if (spriteZeroDots < dots) {
+            event = PpuEvent.SPRITE_ZERO_HIT;
+            dots = spriteZeroDots;
+        }
+
+        if (a12Listener != null) {
+            int rises = a12Listener.getRisesUntilVisible();
+            int a12Dots = rises > 0 ? dotsUntilA12Rises(rises) : Integer.MAX_VALUE;
+            if (a12Dots < dots) {
+                event = PpuEvent.A12_RISE;
+                dots = a12Dots;
+            }
+        }
+
+        nextEvent = event;
+        nextEventTime = (dotClock + dots) * MASTER_CYCLES_PER_DOT;
+    }
+
+    // gets the number of dots before sprite 0 could next be hit, as its
+    // position and the current state of the PPU permit
+    private int dotsUntilSpriteZeroHit() {
+        PpuControl control = mmioRegs.control;
+        int y = oam[0] & 0xFF;
+        int x = oam[3] & 0xFF;
+
+        // a hit needs both layers, and can't occur at the rightmost pixel
+        if (status.sprite0Hit || !control.showBackground || !control.showSprites
+                || y >= VISIBLE_SCANLINES - 1 || x == SCREEN_WIDTH - 1) {
+            return Integer.MAX_VALUE;
+        }
+
+        // sprites are drawn one scanline below their y-coordinate
+        int firstLine = y + 1;
+        int lastLine = Math.min(y + (control.tallSprites ? 16 : 8), VISIBLE_SCANLINES - 1);
+
+        if (scanline < firstLine || scanline > lastLine) {
+            return dotsUntil(firstLine, x + 1);
+        }
+
+        // the sprite is on the current scanline, so a hit may occur at any of
+        // its remaining pixels
+        int firstDot = x + 1;
+        int lastDot = Math.min(x + 8, SCREEN_WIDTH);
+        if (scanlineCycle <= lastDot) {
+            return Math.max(firstDot - scanlineCycle, 0);
+        } else if (scanline < lastLine) {
+            return dotsUntil(scanline + 1, firstDot);
+        } else {
+            return dotsUntil(firstLine, firstDot);
+        }
+    }
+
+    // gets the number of dots before A12 will have risen the given number of
+    // times, assuming the pattern tables and rendering don't change
+    private int dotsUntilA12Rises(int rises) {
+        PpuControl control = mmioRegs.control;
+        boolean spritesHigh = control.tallSprites || control.spriteTable != 0;
+        boolean backgroundHigh = control.backgroundTable != 0;
+        if (!isRenderingEnabled() || spritesHigh == backgroundHigh) {
+            return Integer.MAX_VALUE;
+        }
+
+        int riseDot = spritesHigh ? SPRITE_A12_DOT : BACKGROUND_A12_DOT;
+
+        // number the scanlines with fetches in the order they occur, with the
+        // pre-render scanline last, and find the first one yet to rise
+        int first;
         if (scanline < VISIBLE_SCANLINES) {
-            if (scanlineCycle == 0) {
-                return; // idle cycle
-            } else if (scanlineCycle <= 256) {
-                int subcycle = (scanlineCycle - 1) % 8;
-
-                switch (subcycle) {
-                    case 1:
-                        //TODO: fetch NT byte
-                        break;
-                    case 3:
-                        //TODO: fetch AT byte
-                        break;
-                    case 5:
-                        //TODO: fetch BG low byte
-                        break;
-                    case 7:
-                        //TODO: fetch BG high byte
-
-                        // increment hori(v)
-                        if ((internalRegs.v & 0x1F) == 0) {
-                            internalRegs.v = (short) ((internalRegs.v & ~0x1F) ^ 0x400);
-                        } else {
-                            internalRegs.v++;
-                        }
-
-                        break;
-                    default:
-                        return; // first cycle of memory fetch
-                }
-
-                if (scanlineCycle == 256) {
-                    short v = internalRegs.v;
-
-                    if ((v & 0x7000) != 0x7000) {
-                        v += 0x1000;
-                    } else {
-                        v &= ~0x7000;
-                        short y = (short) ((v & 0x03E0) >> 5);
-                        if (y == 29) {
-                            y = 0;
-                            v ^= 0x0800;
-                        } else if (y == 31) {
-                            y = 0;
-                        } else {
-                            y += 1;
-                        }
-                        v = (short) ((v & ~0x03E0) | (y << 5));
+            first = scanlineCycle <= riseDot ? scanline : scanline + 1;
+        } else if (scanline < PRE_RENDER_SCANLINE || scanlineCycle <= riseDot) {
+            first = VISIBLE_SCANLINES;
+        } else {
+            first = FETCH_SCANLINES;
+        }
+
+        int index = first + rises - 1;
+        int frames = index / FETCH_SCANLINES;
+        index %= FETCH_SCANLINES;
+        int targetLine = index == VISIBLE_SCANLINES ? PRE_RENDER_SCANLINE : index;
+
+        int lines = frames * TOTAL_SCANLINES + targetLine - scanline;
+        // assume a dot is skipped at every frame boundary, so that the
+        // prediction is never late
+        return lines * CYCLES_PER_SCANLINE + riseDot - scanlineCycle - frames;
+    }
+
+    // gets the number of dots before the given dot will be executed
+    private int dotsUntil(int targetScanline, int targetCycle) {
+        int dots = (targetScanline - scanline) * CYCLES_PER_SCANLINE + (targetCycle - scanlineCycle);
+
+        if (dots < 0) {
+            // the target is in the next frame
+            dots += TOTAL_SCANLINES * CYCLES_PER_SCANLINE;
+
+            // account for the dot skipped on odd frames
+            if (oddFrame && isRenderingEnabled()
+                    && (scanline < PRE_RENDER_SCANLINE || scanlineCycle <= CYCLES_PER_SCANLINE - 2)) {
+                dots--;
+            }
+        }
+
+        return dots;
+    }
+
+    private void performCycle() {
+        if (scanline < VISIBLE_SCANLINES || scanline == PRE_RENDER_SCANLINE) {
+            if (isRenderingEnabled()) {
+                performFetchCycle();
+
+                if (a12Listener != null) {
+                    if (scanlineCycle == SPRITE_A12_DOT) {
+                        setA12(mmioRegs.control.tallSprites || mmioRegs.control.spriteTable != 0);
+                    } else if (scanlineCycle == BACKGROUND_A12_DOT) {
+                        setA12(mmioRegs.control.backgroundTable != 0);
                     }
+                }
+            }
+
+            if (scanline < VISIBLE_SCANLINES && scanlineCycle >= 1 && scanlineCycle <= 256) {
+                if (scanlineCycle == 1 && scanlineReuse) {
+                    beginLine();
+                }
+
+                // render the rest of the line if its inputs change partway through
+                if (reusingLine && getChangeCount() != lineChangeCount) {
+                    reusingLine = false;
+                }
 
-                    internalRegs.v = v;
+                if (!reusingLine) {
+                    renderPixel();
                 }
             } else if (scanlineCycle == 257) {
-                internalRegs.v = (short) ((internalRegs.v & ~0b11111) | (internalRegs.t & 0b11111));
+                if (scanline < VISIBLE_SCANLINES && scanlineReuse) {
+                    lineReusable[scanline] = getChangeCount() == lineChangeCount;
+                }
+                reusingLine = false;
+
+                // the next scanline's first tiles and sprites are fetched from here on
+                lineChangeCount = getChangeCount();
+            }
+        }
+
+        if (scanlineCycle == 1) {
+            if (scanline < VISIBLE_SCANLINES) {
+                backColorModes[scanline] = (byte) mmioRegs.control.getColorMode();
+            } else if (scanline == 241) {
+                // set vblank flag
+                status.vblank = true;
+
+                if (mmioRegs.control.genNmis) {
+                    cpu.issueInterrupt(InterruptType.NMI);
+                }
+            } else if (scanline == PRE_RENDER_SCANLINE) {
+                // reset PPU status
+                status.vblank = false;
+                status.sprite0Hit = false;
+                status.spriteOverflow = false;
             }
         }
     }
 
+    private void performFetchCycle() {
+        if ((scanlineCycle >= 2 && scanlineCycle <= 257) || (scanlineCycle >= 322 && scanlineCycle <= 337)) {
+            shiftBackground();
+        }
+
+        if ((scanlineCycle >= 1 && scanlineCycle <= 256) || (scanlineCycle >= 321 && scanlineCycle <= 337)) {
+            int subcycle = (scanlineCycle - 1) % 8;
+
+            switch (subcycle) {
+                case 0:
+                    reloadBackground();
+                    break;
+                case 1:
+                    ntLatch = memory.read((short) (0x2000 | (internalRegs.v & 0x0FFF))) & 0xFF;
+                    break;
+                case 3: {
+                    int v = internalRegs.v;
+                    int at = memory.read((short) (0x23C0 | (v & 0x0C00) | ((v >> 4) & 0x38) | ((v >> 2) & 0x07)));
+                    // select the quadrant of the attribute byte covering the tile
+                    atLatch = (at >> (((v >> 4) & 0b100) | (v & 0b10))) & 0b11;
+                    break;
+                }
+                case 7:
+                    // both bitplanes come out of the tile cache in one go
+                    patternLatch = memory.readTileRow(getPatternAddress());
+
+                    incrementHori();
+
+                    break;
+                default:
+                    break; // first cycle of memory fetch
+            }
+        }
+
+        if (scanlineCycle == 256) {
+            incrementVert();
+        } else if (scanlineCycle == 257) {
+            reloadBackground();
+
+            if (scanline == PRE_RENDER_SCANLINE) {
+                // sprites are never drawn on the first scanline
+                spriteCount = 0;
+                spriteZeroSelected = false;
+            } else {
+                evaluateSprites();
+            }
+
+            // copy horizontal bits of t to v
+            internalRegs.v = (short) ((internalRegs.v & ~0x041F) | (internalRegs.t & 0x041F));
+        } else if (scanline == PRE_RENDER_SCANLINE && scanlineCycle >= 280 && scanlineCycle <= 304) {
+            // copy vertical bits of t to v
+            internalRegs.v = (short) ((internalRegs.v & ~0x7BE0) | (internalRegs.t & 0x7BE0));
+        }
+    }
+
+    private int getPatternAddress() {
+        int fineY = (internalRegs.v >> 12) & 0b111;
+        return (mmioRegs.control.backgroundTable << 12) | (ntLatch << 4) | fineY;
+    }
+
+    private void incrementHori() {
+        if ((internalRegs.v & 0x1F) == 31) {
+            internalRegs.v = (short) ((internalRegs.v & ~0x1F) ^ 0x400);
+        } else {
+            internalRegs.v++;
+        }
+    }
+
+    private void incrementVert() {
+        short v = internalRegs.v;
+
+        if ((v & 0x7000) != 0x7000) {
+            v += 0x1000;
+        } else {
+            v &= ~0x7000;
+            short y = (short) ((v & 0x03E0) >> 5);
+            if (y == 29) {
+                y = 0;
+                v ^= 0x0800;
+            } else if (y == 31) {
+                y = 0;
+            } else {
+                y += 1;
+            }
+            v = (short) ((v & ~0x03E0) | (y << 5));
+        }
+
+        internalRegs.v = v;
+    }
+
+    private void shiftBackground() {
+        patternShift <<= 2;
+        attribShift <<= 2;
+    }
+
+    private void reloadBackground() {
+        patternShift = (patternShift & 0xFFFF0000) | patternLatch;
+        // attributes are constant across a tile, so repeat them for each pixel
+        attribShift = (attribShift & 0xFFFF0000) | (atLatch * 0x5555);
+    }
+
+    // selects the sprites to be drawn on the next scanline and fetches
+    // their pattern rows
+    private void evaluateSprites() {
+        PpuControl control = mmioRegs.control;
+        int height = control.tallSprites ? 16 : 8;
+
+        spriteCount = 0;
+        spriteZeroSelected = false;
+
+        for (int i = 0; i < OAM_SIZE; i += 4) {
+            // sprites are drawn one scanline below their y-coordinate
+            int row = scanline - (oam[i] & 0xFF);
+            if (row < 0 || row >= height) {
+                continue;
+            }
+
+            if (spriteCount == MAX_SPRITES_PER_SCANLINE) {
+                status.spriteOverflow = true;
+                break;
+            }
+
+            int tile = oam[i + 1] & 0xFF;
+            int attrib = oam[i + 2] & 0xFF;
+
+            // flip vertically
+            if ((attrib & 0x80) != 0) {
+                row = height - 1 - row;
+            }
+
+            int addr;
+            if (control.tallSprites) {
+                // 8x16 sprites select their pattern table with bit 0 of the tile index
+                addr = ((tile & 1) << 12) | ((tile & 0xFE) << 4);
+                if (row >= 8) {
+                    addr += 16;
+                    row -= 8;
+                }
+            } else {
+                addr = (control.spriteTable << 12) | (tile << 4);
+            }
+
+            int pattern = memory.readTileRow(addr | row);
+            // flip horizontally
+            if ((attrib & 0x40) != 0) {
+                pattern = reverseRow(pattern);
+            }
+
+            if (i == 0) {
+                spriteZeroSelected = true;
+            }
+
+            spriteRows[spriteCount] = pattern;
+            spriteXs[spriteCount] = oam[i + 3] & 0xFF;
+            spriteAttribs[spriteCount] = attrib;
+            spriteCount++;
+        }
+    }
+
+    private static int reverseRow(int row) {
+        int reversed = 0;
+        for (int i = 0; i < 8; i++) {
+            reversed = (reversed << 2) | (row & 0b11);
+            row >>>= 2;
+        }
+        return reversed;
+    }
+
+    // decides whether the current scanline can be copied from the previous
+    // frame, and records its inputs for the next
+    private void beginLine() {
+        buildLineKey(currentKey);
+
+        int base = scanline * LINE_KEY_SIZE;
+        boolean unchanged = Arrays.equals(currentKey, 0, LINE_KEY_SIZE, lineKeys, base, base + LINE_KEY_SIZE);
+        if (!unchanged) {
+            System.arraycopy(currentKey, 0, lineKeys, base, LINE_KEY_SIZE);
+        }
+
+        // lines with sprite 0 are always rendered so that the hit flag is set
+        // on the correct dot
+        reusingLine = unchanged && lineReusable[scanline] && !spriteZeroSelected
+                && getChangeCount() == lineChangeCount;
+
+        if (reusingLine) {
+            int offset = scanline * SCREEN_WIDTH;
+            System.arraycopy(frontBuffer, offset, backBuffer, offset, SCREEN_WIDTH);
+            reusedScanlines++;
+        }
+    }
+
+    // builds a key of everything the output of the current scanline depends
+    // on, given that it doesn't change while the scanline is rendered
+    private void buildLineKey(int[] key) {
+        PpuControl control = mmioRegs.control;
+        int v = internalRegs.v;
+        int slot = (v >> 10) & 0b11;
+        int coarseY = (v >> 5) & 0b11111;
+
+        // the scroll position, including the nametable
+        key[0] = v;
+        key[1] = internalRegs.x
+                | (control.showBackground ? 0b1000 : 0)
+                | (control.clipBackground ? 0b10000 : 0)
+                | (control.showSprites ? 0b100000 : 0)
+                | (control.clipSprites ? 0b1000000 : 0)
+                | (control.backgroundTable << 7);
+        // the row of tiles being drawn, which continues into the
+        // horizontally adjacent nametable
+        key[2] = memory.getRowStamp(slot, coarseY);
+        key[3] = memory.getRowStamp(slot ^ 1, coarseY);
+        key[4] = memory.getChrStamp();
+        key[5] = memory.getPaletteStamp();
+        // sprite patterns are already fetched, so they are compared directly
+        key[6] = spriteCount;
+        for (int i = 0; i < MAX_SPRITES_PER_SCANLINE; i++) {
+            boolean present = i < spriteCount;
+            key[7 + i * 3] = present ? spriteRows[i] : 0;
+            key[8 + i * 3] = present ? spriteXs[i] : 0;
+            key[9 + i * 3] = present ? spriteAttribs[i] : 0;
+        }
+    }
+
+    // gets the number of changes to memory and registers which may affect rendering
+    private int getChangeCount() {
+        return memory.getChangeCount() + registerChanges;
+    }
+
+    private void renderPixel() {
+        int x = scanlineCycle - 1;
+
+        int pixel = 0;
+        int palette = 0;
+
+        PpuControl control = mmioRegs.control;
+        // clipBackground being set means the leftmost 8 pixels are shown
+        if (control.showBackground && (control.clipBackground || x >= 8)) {
+            int shift = 30 - (internalRegs.x << 1);
+            pixel = (patternShift >>> shift) & 0b11;
+            palette = (attribShift >>> shift) & 0b11;
+        }
+
+        // transparent pixels show the backdrop color
+        int paletteIndex = pixel == 0 ? 0 : (palette << 2) | pixel;
+
+        // likewise for clipSprites
+        if (control.showSprites && (control.clipSprites || x >= 8)) {
+            for (int i = 0; i < spriteCount; i++) {
+                int offset = x - spriteXs[i];
+                if (offset < 0 || offset >= 8) {
+                    continue;
+                }
+
+                int spritePixel = (spriteRows[i] >>> (14 - (offset << 1))) & 0b11;
+                if (spritePixel == 0) {
+                    continue;
+                }
+
+                // sprite 0 overlapping an opaque background pixel sets the hit flag
+                if (i == 0 && spriteZeroSelected && pixel != 0 && x != 255) {
+                    status.sprite0Hit = true;
+                }
+
+                // sprites can be placed behind opaque background pixels
+                if (pixel == 0 || (spriteAttribs[i] & 0x20) == 0) {
+                    paletteIndex = 0x10 | ((spriteAttribs[i] & 0b11) << 2) | spritePixel;
+                }
+
+                // lower sprites are hidden by the first opaque one, even if it
+                // is itself behind the background
+                break;
+            }
+        }
+
+        backBuffer[scanline * SCREEN_WIDTH + x] = (byte) memory.readPalette(paletteIndex);
+    }
+
+    private void setA12(boolean high) {
+        if (high && !a12High) {
+            a12Listener.onA12Rise();
+        }
+        a12High = high;
+    }
+
+    private boolean isRenderingEnabled() {
+        return mmioRegs.control.showBackground || mmioRegs.control.showSprites;
+    }
+
     private void advanceCounters() {
-        // skip last cycle of last scanline on odd frames
-        if (oddFrame && scanline == TOTAL_SCANLINES - 1 && scanlineCycle == CYCLES_PER_SCANLINE - 2) {
+        // skip last cycle of pre-render scanline on odd frames
+        if (oddFrame && isRenderingEnabled()
+                && scanline == PRE_RENDER_SCANLINE && scanlineCycle == CYCLES_PER_SCANLINE - 2) {
             scanlineCycle++;
         }
 
-        if (scanlineCycle++ >= CYCLES_PER_SCANLINE) {
+        if (++scanlineCycle >= CYCLES_PER_SCANLINE) {
             scanlineCycle = 0;
 
-            if (scanline++ >= TOTAL_SCANLINES) {
+            if (++scanline >= TOTAL_SCANLINES) {
                 scanline = 0;
 
                 oddFrame = !oddFrame;
+            } else if (scanline == VISIBLE_SCANLINES) {
+                // the last visible scanline is done, so the frame is complete
+                byte[] finished = backBuffer;
+                backBuffer = frontBuffer;
+                frontBuffer = finished;
+
+                byte[] finishedModes = backColorModes;
+                backColorModes = frontColorModes;
+                frontColorModes = finishedModes;
+
+                frameCount++;
+
+                if (frameHashing) {
+                    recordFrameHash();
+                }
+
+                if (frameRing != null) {
+                    frameRing.publish(frontBuffer, frontColorModes, frameCount);
+                }
             }
         }
+    }
 
-        if (scanline == 241 && scanlineCycle == 1) {
-            // set vblank flag
-            status.vblank = true;
+    private void recordFrameHash() {
+        if (frameHashCount == frameHashes.length) {
+            frameHashes = Arrays.copyOf(frameHashes, frameHashCount * 2);
+        }
 
-            if (mmioRegs.control.genNmis) {
-                cpu.issueInterrupt(InterruptType.NMI);
-            }
-        } else if (scanline == 261) {
-            // reset PPU status
-            status.vblank = false;
-            status.sprite0Hit = false;
-            status.spriteOverflow = false;
+        long hash = HASH_SEED;
+        for (int i = 0; i < frontBuffer.length; i += Long.BYTES) {
+            hash = mixHash(hash, (long) LONG_VIEW.get(frontBuffer, i));
         }
+        for (int i = 0; i < frontColorModes.length; i += Long.BYTES) {
+            hash = mixHash(hash, (long) LONG_VIEW.get(frontColorModes, i));
+        }
+
+        // final avalanche, as in MurmurHash3
+        hash ^= hash >>> 33;
+        hash *= 0xFF51AFD7ED558CCDL;
+        hash ^= hash >>> 33;
+
+        frameHashes[frameHashCount++] = hash;
+    }
+
+    private static long mixHash(long hash, long word) {
+        hash ^= word * 0x9E3779B97F4A7C15L;
+        return Long.rotateLeft(hash, 27) * 0xC2B2AE3D27D4EB4FL;
     }
 
     public byte readMmio(byte index) {
@@ -152,17 +865,29 @@ public class PpuEmulator {
             case 2:
                 val = (byte) ((status.serialize() & 0b11100000) | (mmioRegs.latch & 0b00011111));
 
+                // reading clears the vblank flag and the write toggle, while the
+                // sprite flags stay set until the pre-render scanline
+                status.vblank = false;
                 internalRegs.w = false;
 
-                status.spriteOverflow = false;
-                status.sprite0Hit = false;
-
                 break;
             case 4:
-                val = 0; //TODO
+                val = oam[mmioRegs.oamAddr & 0xFF];
                 break;
             case 7:
-                val = memory.read(internalRegs.v);
+                registerChanges++;
+
+                // reads below the palettes are delayed by one read
+                if ((internalRegs.v & 0x3FFF) < 0x3F00) {
+                    val = readBuffer;
+                    readBuffer = memory.read(internalRegs.v);
+                } else {
+                    val = memory.read(internalRegs.v);
+                    readBuffer = memory.read((short) (internalRegs.v - 0x1000));
+                }
+
+                incrementAddress();
+
                 break;
             default:
                 return mmioRegs.latch; // 2C02 returns latch value if write-only register is read
@@ -180,7 +905,7 @@ public class PpuEmulator {
 
                 mmioRegs.control.deserializeCtrl(val);
 
-                internalRegs.t = (short) ((internalRegs.t & 0b1100) | (mmioRegs.control.nameTable & 0b11));
+                internalRegs.t = (short) ((internalRegs.t & ~0x0C00) | ((mmioRegs.control.nameTable & 0b11) << 10));
 
                 // if the genNmis flag is newly enabled and we're in vblank, immediately generate an NMI
                 if (!oldGenNmis && mmioRegs.control.genNmis && status.vblank) {
@@ -195,13 +920,16 @@ public class PpuEmulator {
                 mmioRegs.oamAddr = val;
                 break;
             case 4:
-                //TODO: write to OAM
+                oam[mmioRegs.oamAddr & 0xFF] = val;
+                mmioRegs.oamAddr++;
                 break;
             case 5:
-                if (internalRegs.w) {
-                    internalRegs.t = (short) ((internalRegs.t & ~0b11111) | (val << 3));
+                if (!internalRegs.w) {
+                    // first write sets the x scroll
+                    internalRegs.t = (short) ((internalRegs.t & ~0b11111) | ((val & 0xFF) >> 3));
                     internalRegs.x = (byte) (val & 0b111);
                 } else {
+                    // second write sets the y scroll
                     internalRegs.t = (short) ((internalRegs.t & 0b00001100_00011111)
                             |  ((val       & 0b111) << 12)
                             | (((val >> 6) & 0b11)  << 8)
@@ -212,10 +940,13 @@ public class PpuEmulator {
 
                 break;
             case 6:
-                if (internalRegs.w) {
+                if (!internalRegs.w) {
+                    // first write sets the high byte
                     internalRegs.t = (short) ((internalRegs.t & 0xFF) | ((val & 0b111111) << 8));
                 } else {
+                    // second write sets the low byte and copies t to v
                     internalRegs.t = (short) ((internalRegs.t & ~0xFF) | (val & 0xFF));
+                    internalRegs.v = internalRegs.t;
                 }
 
                 internalRegs.w = !internalRegs.w;
@@ -223,16 +954,41 @@ public class PpuEmulator {
                 break;
             case 7:
                 memory.write(internalRegs.v, val);
+
+                incrementAddress();
+
                 break;
             default:
                 return;
         }
 
         mmioRegs.latch = val;
+
+        registerChanges++;
+
+        // rendering may have been toggled or sprite 0 moved, which affects
+        // the timing of events
+        updateNextEvent();
+    }
+
+    private void incrementAddress() {
+        internalRegs.v += mmioRegs.control.verticalIncrement ? 32 : 1;
     }
 
-    public void writeOamDmaAddrHigh(byte addrHigh) {
-        mmioRegs.oamDmaHigh = addrHigh;
+    /**
+     * Copies a page of CPU memory into OAM, as done by OAM DMA.
+     *
+     * <p>Like on hardware, the copy begins at the current OAM address and
+     * wraps around to the start of OAM.</p>
+     *
+     * @param page The 256 bytes to copy
+     */
+    public void writeOamDma(byte[] page) {
+        int start = mmioRegs.oamAddr & 0xFF;
+        System.arraycopy(page, 0, oam, start, OAM_SIZE - start);
+        System.arraycopy(page, OAM_SIZE - start, oam, 0, start);
+
+        updateNextEvent();
     }
 
 }
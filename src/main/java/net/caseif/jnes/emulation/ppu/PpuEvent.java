@@ -0,0 +1,59 @@
+/*
+ * This file is a part of jNES.
+ * Copyright (c) 2018-2019, Max Roncace <mproncace@gmail.com>
+ *
+ * The MIT License
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package net.caseif.jnes.emulation.ppu;
+
+/**
+ * Events at which the state of the PPU may become visible outside of it.
+ */
+public enum PpuEvent {
+
+    /**
+     * The last dot of the last visible scanline, upon which the frame is
+     * complete.
+     */
+    FRAME_COMPLETE,
+    /**
+     * The start of vblank, at which point an NMI is generated if enabled.
+     */
+    VBLANK_START,
+    /**
+     * The end of the pre-render scanline, after which the next frame is
+     * rendered. Since the last dot of the scanline is skipped on odd frames,
+     * this is the dot before it.
+     */
+    PRE_RENDER_END,
+    /**
+     * The earliest dot at which sprite 0 may next be hit. This is only a
+     * prediction, as the hit depends on the pixels drawn.
+     */
+    SPRITE_ZERO_HIT,
+    /**
+     * The rise of A12 upon which the {@link A12Listener} changes state
+     * visible to the CPU, e.g. by asserting a mapper IRQ.
+     */
+    A12_RISE
+
+}
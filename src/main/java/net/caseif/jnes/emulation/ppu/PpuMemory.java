@@ -27,21 +27,173 @@ package net.caseif.jnes.emulation.ppu;
 
 import static net.caseif.jnes.util.MathHelper.unsign;
 
+import net.caseif.jnes.model.Cartridge;
+
 public class PpuMemory {
 
-    private final byte[] patternTables = new byte[0x2000];
-    private final byte[] nameTables = new byte[0x1F00];
-    private final byte[] palettes = new byte[0x100];
+    private static final int PATTERN_TABLES_SIZE = 0x2000;
+    // granularity of CHR bank switching
+    private static final int CHR_SLOT_SIZE = 0x400;
+    private static final int NAMETABLE_SIZE = 0x400;
+    // bytes per row of nametable tiles
+    private static final int NAMETABLE_ROW_SIZE = 32;
+    private static final int ATTRIBUTE_TABLE_OFFSET = 0x3C0;
+
+    // CHR ROM or RAM, of which up to 8KB is mapped into the pattern tables
+    private final byte[] chr;
+    // whether the pattern tables are backed by CHR RAM rather than ROM
+    private final boolean chrWritable;
+    // offset into CHR of the bank mapped to each 1KB slot of the pattern tables
+    private final int[] chrOffsets = new int[PATTERN_TABLES_SIZE / CHR_SLOT_SIZE];
+    private final TileCache tileCache;
+    // console-internal nametable RAM, extended by the cartridge if it
+    // provides four-screen VRAM
+    private final byte[] ciram;
+    // offset into CIRAM of the nametable mapped to each of the four slots
+    private final int[] nameTableOffsets = new int[4];
+    private final byte[] palettes = new byte[0x20];
+
+    // number of changes made to memory which affect rendering, also used to
+    // stamp the regions of memory that each change affects
+    private int changeCount = 0;
+    // stamps of the last change to each row of tiles in CIRAM, including any
+    // change to the attributes covering it
+    private final int[] rowStamps;
+    private int chrStamp = 0;
+    private int paletteStamp = 0;
+
+    public PpuMemory(Cartridge cart) {
+        byte[] chrRom = cart.getChrRom();
+        if (chrRom.length == 0) {
+            // no CHR ROM, so the cartridge provides CHR RAM instead, which is
+            // mapped in 1KB slots and so can't be any smaller
+            int ramSize = cart.getChrRamSize() + cart.getChrNvramSize();
+            this.chr = new byte[Math.max(ramSize, CHR_SLOT_SIZE)];
+            this.chrWritable = true;
+        } else {
+            this.chr = chrRom;
+            this.chrWritable = false;
+        }
+
+        this.tileCache = new TileCache(chr);
+
+        // the first 8KB of CHR is mapped by default
+        mapChr(0, PATTERN_TABLES_SIZE, 0);
+
+        if (cart.doesIgnoreMirroringControl()) {
+            this.ciram = new byte[NAMETABLE_SIZE * 4];
+            setMirroringMode(Cartridge.MirroringMode.FOUR_SCREEN);
+        } else {
+            this.ciram = new byte[NAMETABLE_SIZE * 2];
+            setMirroringMode(cart.getMirroringMode());
+        }
+
+        this.rowStamps = new int[ciram.length / NAMETABLE_ROW_SIZE];
+    }
+
+    /**
+     * Remaps the nametable slots according to the given mirroring mode.
+     *
+     * @param mode The new mirroring mode
+     */
+    public void setMirroringMode(Cartridge.MirroringMode mode) {
+        for (int slot = 0; slot < nameTableOffsets.length; slot++) {
+            mapNameTable(slot, mode.getBank(slot));
+        }
+    }
+
+    /**
+     * Maps a 1KB bank of nametable RAM to a nametable slot.
+     *
+     * @param slot The slot to map, in the range 0-3
+     * @param bank The bank to map to the slot
+     */
+    public void mapNameTable(int slot, int bank) {
+        int offset = (bank * NAMETABLE_SIZE) % ciram.length;
+        if (nameTableOffsets[slot] != offset) {
+            nameTableOffsets[slot] = offset;
+            changeCount++;
+        }
+    }
+
+    /**
+     * Gets the size of the cartridge's CHR ROM or RAM.
+     *
+     * @return The size of CHR in bytes
+     */
+    public int getChrSize() {
+        return chr.length;
+    }
+
+    /**
+     * Maps a contiguous region of CHR into the pattern tables, e.g. when
+     * switching CHR banks. Only the slot table is updated, so this is
+     * constant-time and decoded tiles remain cached.
+     *
+     * @param startAddr The first address in the pattern tables to map, which
+     *     must be a multiple of 1KB
+     * @param size The number of bytes to map, which must be a multiple of 1KB
+     * @param offset The offset into CHR of the region, which wraps around if
+     *     it exceeds the size of CHR
+     */
+    public void mapChr(int startAddr, int size, int offset) {
+        boolean changed = false;
+        for (int i = 0; i < size / CHR_SLOT_SIZE; i++) {
+            int slot = startAddr / CHR_SLOT_SIZE + i;
+            int slotOffset = (offset + i * CHR_SLOT_SIZE) % chr.length;
+            if (chrOffsets[slot] != slotOffset) {
+                chrOffsets[slot] = slotOffset;
+                changed = true;
+            }
+        }
+
+        if (changed) {
+            chrStamp = ++changeCount;
+        }
+    }
+
+    /**
+     * Gets the number of changes made so far to memory which affect
+     * rendering, including remapping it.
+     *
+     * @return The current change count
+     */
+    int getChangeCount() {
+        return changeCount;
+    }
+
+    /**
+     * Gets the stamp of the last change to a row of tiles or to its
+     * attributes. Stamps are unique to each change, so if the stamp of a row
+     * is unchanged, then so are its contents, even if its slot has since been
+     * remapped.
+     *
+     * @param slot The nametable slot containing the row
+     * @param coarseY The index of the row within the nametable
+     * @return The stamp of the row
+     */
+    int getRowStamp(int slot, int coarseY) {
+        return rowStamps[(nameTableOffsets[slot] / NAMETABLE_ROW_SIZE) + coarseY];
+    }
+
+    int getChrStamp() {
+        return chrStamp;
+    }
+
+    int getPaletteStamp() {
+        return paletteStamp;
+    }
 
     public byte read(short addr) {
         int addri = unsign(addr) % 0x4000;
 
         if (addri < 0x2000) {
-            return patternTables[addri];
+            return chr[getChrIndex(addri)];
         } else if (addri < 0x3F00) {
-            return nameTables[addri - 0x2000];
+            // $3000-$3EFF mirrors $2000-$2EFF
+            return ciram[getNameTableIndex(addri)];
         } else {
-            return palettes[addri - 0x3F00];
+            return palettes[getPaletteIndex(addri)];
         }
     }
 
@@ -49,12 +201,75 @@ public class PpuMemory {
         int addri = unsign(addr) % 0x4000;
 
         if (addri < 0x2000) {
-            patternTables[addri] = val;
+            // writes to CHR ROM are ignored
+            if (chrWritable) {
+                int index = getChrIndex(addri);
+                chr[index] = val;
+                tileCache.invalidate(index);
+                chrStamp = ++changeCount;
+            }
         } else if (addri < 0x3F00) {
-            nameTables[addri - 0x2000] = val;
+            int index = getNameTableIndex(addri);
+            ciram[index] = val;
+            stampNameTable(index);
         } else {
-            palettes[addri - 0x3F00] = val;
+            palettes[getPaletteIndex(addri)] = val;
+            paletteStamp = ++changeCount;
+        }
+    }
+
+    private void stampNameTable(int index) {
+        int stamp = ++changeCount;
+        rowStamps[index / NAMETABLE_ROW_SIZE] = stamp;
+
+        int offset = index & (NAMETABLE_SIZE - 1);
+        if (offset >= ATTRIBUTE_TABLE_OFFSET) {
+            // each attribute byte covers 4 rows of tiles
+            int firstRow = (index - offset) / NAMETABLE_ROW_SIZE + ((offset - ATTRIBUTE_TABLE_OFFSET) >> 3) * 4;
+            for (int row = firstRow; row < firstRow + 4; row++) {
+                rowStamps[row] = stamp;
+            }
+        }
+    }
+
+    /**
+     * Reads a row of a tile from the pattern tables, decoded into packed
+     * 2-bit pixels.
+     *
+     * @param addr The address of the row's low bitplane byte
+     * @return The row, with the leftmost pixel in the two most significant
+     *     of its 16 bits
+     */
+    int readTileRow(int addr) {
+        return tileCache.getRow(getChrIndex(addr));
+    }
+
+    /**
+     * Reads a color from palette RAM.
+     *
+     * @param index The index into palette RAM, in the range 0-31
+     * @return The 6-bit color stored at the index
+     */
+    int readPalette(int index) {
+        return palettes[getPaletteIndex(index)] & 0x3F;
+    }
+
+    private int getChrIndex(int addr) {
+        return chrOffsets[addr / CHR_SLOT_SIZE] + (addr & (CHR_SLOT_SIZE - 1));
+    }
+
+    private int getNameTableIndex(int addr) {
+        return nameTableOffsets[(addr >> 10) & 0b11] | (addr & (NAMETABLE_SIZE - 1));
+    }
+
+    private static int getPaletteIndex(int addr) {
+        int index = addr & 0x1F;
+        // the backdrop entries of the sprite palettes mirror those of the
+        // background palettes
+        if ((index & 0x13) == 0x10) {
+            index &= ~0x10;
         }
+        return index;
     }
 
 }
@@ -33,8 +33,6 @@ public class PpuMmioRegisters {
 
     byte oamAddr = 0;
 
-    byte oamDmaHigh = 0;
-
     byte latch = 0;
 
 }
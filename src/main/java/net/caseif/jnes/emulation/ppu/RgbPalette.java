@@ -0,0 +1,167 @@
+/*
+ * This file is a part of jNES.
+ * Copyright (c) 2018-2019, Max Roncace <mproncace@gmail.com>
+ *
+ * The MIT License
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package net.caseif.jnes.emulation.ppu;
+
+import static net.caseif.jnes.util.IoHelper.toBuffer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * A lookup table mapping the PPU's 6-bit colors to ARGB values under each
+ * combination of the grayscale and color emphasis bits.
+ */
+public class RgbPalette {
+
+    private static final int COLORS = 64;
+    private static final int EMPHASIS_MODES = 8;
+    // grayscale combined with each emphasis mode
+    private static final int COLOR_MODES = EMPHASIS_MODES * 2;
+
+    // how much a channel is attenuated by while any other channel is emphasized
+    private static final double EMPHASIS_ATTENUATION = 0.816328;
+
+    private static final int[] DEFAULT_COLORS = new int[] {
+            0x666666, 0x002A88, 0x1412A7, 0x3B00A4, 0x5C007E, 0x6E0040, 0x6C0600, 0x561D00,
+            0x333500, 0x0B4800, 0x005200, 0x004F08, 0x00404D, 0x000000, 0x000000, 0x000000,
+            0xADADAD, 0x155FD9, 0x4240FF, 0x7527FE, 0xA01ACC, 0xB71E7B, 0xB53120, 0x994E00,
+            0x6B6D00, 0x388700, 0x0C9300, 0x008F32, 0x007C8D, 0x000000, 0x000000, 0x000000,
+            0xFFFEFF, 0x64B0FF, 0x9290FF, 0xC676FF, 0xF36AFF, 0xFE6ECC, 0xFE8170, 0xEA9E22,
+            0xBCBE00, 0x88D800, 0x5CE430, 0x45E082, 0x48CDDE, 0x4F4F4F, 0x000000, 0x000000,
+            0xFFFEFF, 0xC0DFFF, 0xD3D2FF, 0xE8C8FF, 0xFBC2FF, 0xFEC4EA, 0xFECCC5, 0xF7D8A5,
+            0xE4E594, 0xCFEF96, 0xBDF4AB, 0xB3F3CC, 0xB5EBF2, 0xB8B8B8, 0x000000, 0x000000,
+    };
+
+    private static final RgbPalette DEFAULT = new RgbPalette(DEFAULT_COLORS);
+
+    // indexed by the color mode in the upper bits and the color in the lower 6
+    private final int[] lut = new int[COLOR_MODES * COLORS];
+
+    private RgbPalette(int[] colors) {
+        boolean hasEmphasis = colors.length == EMPHASIS_MODES * COLORS;
+
+        for (int emphasis = 0; emphasis < EMPHASIS_MODES; emphasis++) {
+            for (int color = 0; color < COLORS; color++) {
+                int rgb = hasEmphasis
+                        ? colors[emphasis * COLORS + color]
+                        : emphasize(colors[color], emphasis);
+                lut[(emphasis << 7) | color] = 0xFF000000 | rgb;
+            }
+
+            // grayscale clears the hue bits of the color before emphasis is applied
+            for (int color = 0; color < COLORS; color++) {
+                lut[(emphasis << 7) | COLORS | color] = lut[(emphasis << 7) | (color & 0x30)];
+            }
+        }
+    }
+
+    /**
+     * Gets the default palette.
+     *
+     * @return The default palette
+     */
+    public static RgbPalette getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * Loads a palette from a .pal file.
+     *
+     * <p>The file must contain either 64 RGB triplets, in which case the
+     * emphasized colors are derived from them, or 512 triplets covering each
+     * emphasis mode in turn.</p>
+     *
+     * @param input The stream to read the palette from
+     * @return The loaded palette
+     * @throws IOException If an exception occurs while reading the stream
+     */
+    public static RgbPalette load(InputStream input) throws IOException {
+        ByteBuffer buffer = toBuffer(input);
+
+        int count = buffer.remaining() / 3;
+        if (buffer.remaining() % 3 != 0 || (count != COLORS && count != EMPHASIS_MODES * COLORS)) {
+            throw new IllegalArgumentException("Bad palette size " + buffer.remaining() + ".");
+        }
+
+        int[] colors = new int[count];
+        for (int i = 0; i < count; i++) {
+            colors[i] = ((buffer.get() & 0xFF) << 16) | ((buffer.get() & 0xFF) << 8) | (buffer.get() & 0xFF);
+        }
+
+        return new RgbPalette(colors);
+    }
+
+    /**
+     * Gets the ARGB value of a color.
+     *
+     * @param color The 6-bit color
+     * @param colorMode The color mode, as returned by
+     *     {@link PpuControl#getColorMode()}
+     * @return The ARGB value of the color
+     */
+    public int toArgb(int color, int colorMode) {
+        return lut[(colorMode << 6) | (color & 0x3F)];
+    }
+
+    /**
+     * Converts a frame of colors to ARGB values.
+     *
+     * @param frame The frame, as returned by {@link PpuEmulator#getFrameBuffer()}
+     * @param colorModes The color mode of each scanline of the frame, as
+     *     returned by {@link PpuEmulator#getFrameColorModes()}
+     * @param dest The array to write the ARGB values to
+     */
+    public void toArgb(byte[] frame, byte[] colorModes, int[] dest) {
+        int width = frame.length / colorModes.length;
+        int i = 0;
+        for (int y = 0; y < colorModes.length; y++) {
+            int base = colorModes[y] << 6;
+            for (int end = i + width; i < end; i++) {
+                dest[i] = lut[base | frame[i]];
+            }
+        }
+    }
+
+    private static int emphasize(int rgb, int emphasis) {
+        if (emphasis == 0) {
+            return rgb;
+        }
+
+        int result = 0;
+        // red is emphasized by the lowest bit, and blue by the highest
+        for (int channel = 0; channel < 3; channel++) {
+            int value = (rgb >> (16 - channel * 8)) & 0xFF;
+            // a channel's own bit doesn't protect it from the others, so setting all three darkens everything
+            if ((emphasis & ~(1 << channel)) != 0) {
+                value = (int) (value * EMPHASIS_ATTENUATION);
+            }
+            result |= value << (16 - channel * 8);
+        }
+        return result;
+    }
+
+}
@@ -0,0 +1,94 @@
+/*
+ * This file is a part of jNES.
+ * Copyright (c) 2018-2019, Max Roncace <mproncace@gmail.com>
+ *
+ * The MIT License
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package net.caseif.jnes.emulation.ppu;
+
+/**
+ * Cache of pattern table tiles, decoded from their two bitplanes into rows
+ * of packed 2-bit pixels.
+ *
+ * <p>Each row is stored as 16 bits with the leftmost pixel in the two most
+ * significant bits. Entries are keyed by the physical location of the tile
+ * in CHR memory, so switching CHR banks requires no invalidation; tiles are
+ * only invalidated individually when CHR RAM is written to.</p>
+ */
+class TileCache {
+
+    private static final int BYTES_PER_TILE = 16;
+    private static final int ROWS_PER_TILE = 8;
+
+    private final byte[] chr;
+
+    private final char[] rows;
+    private final boolean[] decoded;
+
+    TileCache(byte[] chr) {
+        this.chr = chr;
+
+        int tiles = chr.length / BYTES_PER_TILE;
+        this.rows = new char[tiles * ROWS_PER_TILE];
+        this.decoded = new boolean[tiles];
+    }
+
+    /**
+     * Gets a decoded row of a tile.
+     *
+     * @param addr The offset into CHR memory of the row's low bitplane byte
+     * @return The row, as 8 packed 2-bit pixels
+     */
+    int getRow(int addr) {
+        int tile = addr / BYTES_PER_TILE;
+        if (!decoded[tile]) {
+            decode(tile);
+        }
+        return rows[tile * ROWS_PER_TILE + (addr & 0b111)];
+    }
+
+    /**
+     * Invalidates the tile containing the given byte of CHR memory.
+     *
+     * @param addr The offset into CHR memory which was written to
+     */
+    void invalidate(int addr) {
+        decoded[addr / BYTES_PER_TILE] = false;
+    }
+
+    private void decode(int tile) {
+        int base = tile * BYTES_PER_TILE;
+        for (int row = 0; row < ROWS_PER_TILE; row++) {
+            rows[tile * ROWS_PER_TILE + row] = (char) interleave(chr[base + row], chr[base + row + 8]);
+        }
+        decoded[tile] = true;
+    }
+
+    private static int interleave(byte low, byte high) {
+        int packed = 0;
+        for (int bit = 7; bit >= 0; bit--) {
+            packed = (packed << 2) | (((high >> bit) & 1) << 1) | ((low >> bit) & 1);
+        }
+        return packed;
+    }
+
+}
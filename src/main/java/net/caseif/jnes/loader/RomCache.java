@@ -0,0 +1,151 @@
+/*
+ * This file is a part of jNES.
+ * Copyright (c) 2018-2019, Max Roncace <mproncace@gmail.com>
+ *
+ * The MIT License
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package net.caseif.jnes.loader;
+
+import net.caseif.jnes.model.Cartridge;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * JVM-wide cache of loaded cartridges, so that every emulator running the
+ * same ROM file shares a single copy of its PRG and CHR.
+ *
+ * <p>Cartridges are held weakly, and so are dropped once no emulator uses
+ * them. A file is loaded again if its size or modification time
+ * changes.</p>
+ */
+final class RomCache {
+
+    private static final ConcurrentMap<Key, CartridgeRef> CACHE = new ConcurrentHashMap<>();
+    private static final ReferenceQueue<Cartridge> STALE = new ReferenceQueue<>();
+
+    private RomCache() {
+    }
+
+    /**
+     * Gets the cartridge cached for the given file, loading it if needed.
+     *
+     * @param path The path of the ROM file
+     * @param loader The function to load the file with
+     * @return The cartridge
+     * @throws IOException If the file can't be read
+     */
+    static Cartridge get(Path path, Loader loader) throws IOException {
+        expungeStale();
+
+        Path file = path.toRealPath();
+        BasicFileAttributes attrs = Files.readAttributes(file, BasicFileAttributes.class);
+        Key key = new Key(file, attrs.size(), attrs.lastModifiedTime().toMillis());
+
+        CartridgeRef ref = CACHE.get(key);
+        Cartridge cart = ref != null ? ref.get() : null;
+        if (cart != null) {
+            return cart;
+        }
+
+        // load within compute so that concurrent loads of a file share one
+        // copy; the result is held strongly until it's returned
+        Cartridge[] result = new Cartridge[1];
+        try {
+            CACHE.compute(key, (k, existing) -> {
+                Cartridge cached = existing != null ? existing.get() : null;
+                if (cached != null) {
+                    result[0] = cached;
+                    return existing;
+                }
+
+                try {
+                    result[0] = loader.load(k.path);
+                } catch (IOException ex) {
+                    throw new UncheckedIOException(ex);
+                }
+                return new CartridgeRef(k, result[0]);
+            });
+        } catch (UncheckedIOException ex) {
+            throw ex.getCause();
+        }
+
+        return result[0];
+    }
+
+    // removes the entries of cartridges which have been collected
+    private static void expungeStale() {
+        CartridgeRef ref;
+        while ((ref = (CartridgeRef) STALE.poll()) != null) {
+            CACHE.remove(ref.key, ref);
+        }
+    }
+
+    @FunctionalInterface
+    interface Loader {
+        Cartridge load(Path path) throws IOException;
+    }
+
+    private static final class Key {
+        private final Path path;
+        private final long size;
+        private final long modified;
+
+        private Key(Path path, long size, long modified) {
+            this.path = path;
+            this.size = size;
+            this.modified = modified;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return path.equals(other.path) && size == other.size && modified == other.modified;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(path, size, modified);
+        }
+    }
+
+    private static final class CartridgeRef extends WeakReference<Cartridge> {
+        private final Key key;
+
+        private CartridgeRef(Key key, Cartridge cart) {
+            super(cart, STALE);
+            this.key = key;
+        }
+    }
+
+}
@@ -0,0 +1,194 @@
+/*
+ * This file is a part of jNES.
+ * Copyright (c) 2018-2019, Max Roncace <mproncace@gmail.com>
+ *
+ * The MIT License
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package net.caseif.jnes.loader;
+
+import net.caseif.jnes.model.Cartridge;
+
+import java.nio.ByteBuffer;
+
+/**
+ * The contents of an iNES or NES 2.0 header.
+ */
+final class RomHeader {
+
+    static final int SIZE = 16;
+
+    private static final int MAGIC = 0x4E45531A;
+    private static final int TRAINER_SIZE = 512;
+    private static final int PRG_CHUNK_SIZE = 16384;
+    private static final int CHR_CHUNK_SIZE = 8192;
+
+    final int prgSize;
+    final int chrSize;
+    final boolean hasTrainer;
+    final Cartridge.MirroringMode mirroring;
+    final boolean cartridgePrgRam;
+    final boolean ignoreMirroringControl;
+    final int mapper;
+    final boolean nes2;
+
+    // only given by NES 2.0 headers
+    private final int submapper;
+    private final int prgRamSize;
+    private final int prgNvramSize;
+    private final int chrRamSize;
+    private final int chrNvramSize;
+    private final Cartridge.TimingRegion timingRegion;
+
+    private RomHeader(ByteBuffer buffer) {
+        int prgLsb = buffer.get() & 0xFF;
+        int chrLsb = buffer.get() & 0xFF;
+
+        int flag6 = buffer.get() & 0xFF;
+
+        this.mirroring = (flag6 & 0b1) == 0
+                ? Cartridge.MirroringMode.HORIZONTAL
+                : Cartridge.MirroringMode.VERTICAL;
+
+        this.cartridgePrgRam = (flag6 & 0b10) != 0;
+
+        this.hasTrainer = (flag6 & 0b100) != 0;
+
+        this.ignoreMirroringControl = (flag6 & 0b1000) != 0;
+
+        int flag7 = buffer.get() & 0xFF;
+
+        // $8-15, which are only meaningful to NES 2.0
+        byte[] ext = new byte[8];
+        buffer.get(ext);
+
+        int mapper = flag6 >> 4;
+
+        this.nes2 = (flag7 & 0b1100) == 0b1000;
+        if (nes2) {
+            // NES 2.0 extends the mapper number and ROM sizes with $8-9
+            mapper |= (flag7 & 0xF0) | ((ext[0] & 0x0F) << 8);
+            this.submapper = (ext[0] & 0xF0) >> 4;
+
+            this.prgSize = getRomSize(prgLsb, ext[1] & 0x0F, PRG_CHUNK_SIZE);
+            this.chrSize = getRomSize(chrLsb, (ext[1] & 0xF0) >> 4, CHR_CHUNK_SIZE);
+
+            this.prgRamSize = getRamSize(ext[2] & 0x0F);
+            this.prgNvramSize = getRamSize((ext[2] & 0xF0) >> 4);
+            this.chrRamSize = getRamSize(ext[3] & 0x0F);
+            this.chrNvramSize = getRamSize((ext[3] & 0xF0) >> 4);
+
+            this.timingRegion = Cartridge.TimingRegion.values()[ext[4] & 0b11];
+        } else {
+            // old dumps may have junk in $C-F, in which case the upper nibble
+            // of the mapper number can't be trusted either
+            if (ext[4] == 0 && ext[5] == 0 && ext[6] == 0 && ext[7] == 0) {
+                mapper |= flag7 & 0xF0;
+            }
+
+            this.prgSize = prgLsb * PRG_CHUNK_SIZE;
+            this.chrSize = chrLsb * CHR_CHUNK_SIZE;
+
+            // the cartridge assumes the usual RAM in their absence
+            this.submapper = 0;
+            this.prgRamSize = 0;
+            this.prgNvramSize = 0;
+            this.chrRamSize = 0;
+            this.chrNvramSize = 0;
+            this.timingRegion = Cartridge.TimingRegion.NTSC;
+        }
+
+        this.mapper = mapper;
+    }
+
+    /**
+     * Reads a header from the given buffer, leaving it positioned at the end
+     * of the header.
+     *
+     * @param buffer The buffer to read from
+     * @return The header
+     * @throws IllegalArgumentException If the buffer doesn't start with a
+     *     valid header
+     */
+    static RomHeader read(ByteBuffer buffer) {
+        if (buffer.remaining() < SIZE || buffer.getInt() != MAGIC) {
+            throw new IllegalArgumentException("Bad NES header.");
+        }
+
+        return new RomHeader(buffer);
+    }
+
+    /**
+     * Gets the offset of PRG ROM from the start of the file.
+     *
+     * @return The offset of PRG ROM
+     */
+    int getPrgOffset() {
+        return SIZE + (hasTrainer ? TRAINER_SIZE : 0);
+    }
+
+    /**
+     * Gets the size of the file which the header describes, not counting
+     * any trailing data.
+     *
+     * @return The size of the file
+     */
+    long getFileSize() {
+        return (long) getPrgOffset() + prgSize + chrSize;
+    }
+
+    /**
+     * Creates the cartridge which the header describes.
+     *
+     * @param prg The cartridge's PRG ROM
+     * @param chr The cartridge's CHR ROM
+     * @return The cartridge
+     */
+    Cartridge createCartridge(byte[] prg, byte[] chr) {
+        if (nes2) {
+            return new Cartridge(prg, chr, mirroring, cartridgePrgRam, ignoreMirroringControl, mapper, submapper,
+                    prgRamSize, prgNvramSize, chrRamSize, chrNvramSize, timingRegion);
+        } else {
+            return new Cartridge(prg, chr, mirroring, cartridgePrgRam, ignoreMirroringControl, mapper);
+        }
+    }
+
+    // gets the size of a ROM area from the low byte and high nibble of its
+    // size in chunks, or of its exponent-multiplier form if the nibble is $F
+    private static int getRomSize(int lsb, int msb, int chunkSize) {
+        if (msb != 0xF) {
+            return ((msb << 8) | lsb) * chunkSize;
+        }
+
+        int exponent = lsb >> 2;
+        int multiplier = (lsb & 0b11) * 2 + 1;
+        if (exponent >= 31 || ((long) multiplier << exponent) > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("ROM size too large.");
+        }
+        return multiplier << exponent;
+    }
+
+    // gets the size of a RAM area from its shift count
+    private static int getRamSize(int shift) {
+        return shift == 0 ? 0 : 64 << shift;
+    }
+
+}
@@ -0,0 +1,536 @@
+/*
+ * This file is a part of jNES.
+ * Copyright (c) 2018-2019, Max Roncace <mproncace@gmail.com>
+ *
+ * The MIT License
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package net.caseif.jnes.loader;
+
+import net.caseif.jnes.model.Cartridge;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.zip.CRC32;
+
+/**
+ * A persistent index of a library of ROM files, holding the header and the
+ * CRC32s of the contents of each so that ROMs can be looked up without
+ * reading them.
+ *
+ * <p>Paths are stored relative to the root of the library, with forward
+ * slashes as separators.</p>
+ */
+public class RomIndex {
+
+    // "JNIX"
+    private static final int MAGIC = 0x4A4E4958;
+    private static final int VERSION = 1;
+
+    private static final String ROM_EXTENSION = ".nes";
+
+    // reversed CRC-32 polynomial
+    private static final int CRC_POLYNOMIAL = 0xEDB88320;
+
+    // entries keyed by path, sorted so that the index is written in a
+    // stable order
+    private final Map<String, Entry> entries;
+    // number of ROM files read while building the index
+    private final int readCount;
+    // paths which couldn't be read while building the index
+    private final List<String> failedPaths;
+
+    private RomIndex(Map<String, Entry> entries, int readCount, List<String> failedPaths) {
+        this.entries = entries;
+        this.readCount = readCount;
+        this.failedPaths = failedPaths;
+    }
+
+    public static RomIndex empty() {
+        return new RomIndex(new TreeMap<>(), 0, Collections.emptyList());
+    }
+
+    /**
+     * Reads an index previously written by {@link #write(Path)}.
+     *
+     * @param file The index file
+     * @return The index
+     * @throws IOException If the file can't be read or isn't a ROM index
+     */
+    public static RomIndex read(Path file) throws IOException {
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (input.readInt() != MAGIC) {
+                throw new IOException("Not a ROM index.");
+            }
+            int version = input.readInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported ROM index version " + version + ".");
+            }
+
+            Map<String, Entry> entries = new TreeMap<>();
+            int count = input.readInt();
+            for (int i = 0; i < count; i++) {
+                Entry entry = Entry.read(input);
+                entries.put(entry.path, entry);
+            }
+            return new RomIndex(entries, 0, Collections.emptyList());
+        }
+    }
+
+    /**
+     * Writes the index to the given file, replacing it atomically.
+     *
+     * @param file The file to write to
+     * @throws IOException If the file can't be written
+     */
+    public void write(Path file) throws IOException {
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+            output.writeInt(MAGIC);
+            output.writeInt(VERSION);
+            output.writeInt(entries.size());
+            for (Entry entry : entries.values()) {
+                entry.write(output);
+            }
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Builds an index of the ROM files under the given directory, walking it
+     * in parallel.
+     *
+     * <p>Files whose size and modification time match their entry in this
+     * index keep it without being read; other files have only their header
+     * and contents read. Files which are no longer present are dropped, as
+     * are files without a valid header. Symbolic links are not
+     * followed.</p>
+     *
+     * <p>Files and subdirectories which can't be read are skipped and left
+     * out of the index, and are reported by {@link #getFailedPaths()}.</p>
+     *
+     * @param root The root directory of the library
+     * @return The updated index
+     * @throws IOException If the root directory can't be read
+     */
+    public RomIndex update(Path root) throws IOException {
+        Map<String, Entry> found = new ConcurrentHashMap<>();
+        AtomicInteger reads = new AtomicInteger();
+        Collection<String> failed = new ConcurrentLinkedQueue<>();
+
+        try {
+            ForkJoinPool.commonPool().invoke(new DirectoryTask(root, root, found, reads, failed));
+        } catch (UncheckedIOException ex) {
+            throw ex.getCause();
+        }
+
+        List<String> failedPaths = new ArrayList<>(failed);
+        Collections.sort(failedPaths);
+        return new RomIndex(new TreeMap<>(found), reads.get(), Collections.unmodifiableList(failedPaths));
+    }
+
+    public Collection<Entry> getEntries() {
+        return Collections.unmodifiableCollection(entries.values());
+    }
+
+    /**
+     * Gets the number of ROM files which were read to build this index, as
+     * opposed to being carried over from the previous one.
+     *
+     * @return The number of files read
+     */
+    public int getReadCount() {
+        return readCount;
+    }
+
+    /**
+     * Gets the paths, relative to the root of the library, of the files and
+     * directories which were skipped because they couldn't be read while
+     * building this index.
+     *
+     * @return The sorted paths which couldn't be read
+     */
+    public List<String> getFailedPaths() {
+        return failedPaths;
+    }
+
+    /**
+     * Finds the ROMs whose combined PRG and CHR match the given CRC32.
+     *
+     * @param crc The CRC32 to look up
+     * @return The matching entries
+     */
+    public List<Entry> findByCrc(int crc) {
+        return entries.values().stream().filter(e -> e.romCrc == crc).collect(Collectors.toList());
+    }
+
+    public List<Entry> findByMapper(int mapper) {
+        return entries.values().stream().filter(e -> e.mapper == mapper).collect(Collectors.toList());
+    }
+
+    // reads the header and contents of a ROM file, or returns null if it
+    // isn't a valid ROM
+    private static Entry index(Path file, String path, BasicFileAttributes attrs) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
+            RomHeader header;
+            try {
+                header = RomHeader.read(buffer);
+            } catch (IllegalArgumentException ex) {
+                return null;
+            }
+            if (buffer.capacity() < header.getFileSize()) {
+                return null;
+            }
+
+            int prgStart = header.getPrgOffset();
+            int chrStart = prgStart + header.prgSize;
+            int chrEnd = chrStart + header.chrSize;
+
+            CRC32 prg = new CRC32();
+            buffer.limit(chrStart).position(prgStart);
+            prg.update(buffer);
+
+            CRC32 chr = new CRC32();
+            buffer.limit(chrEnd).position(chrStart);
+            chr.update(buffer);
+
+            // derived rather than computed, so that the contents are only read once
+            int rom = combineCrc((int) prg.getValue(), (int) chr.getValue(), header.chrSize);
+
+            Cartridge.MirroringMode mirroring = header.ignoreMirroringControl
+                    ? Cartridge.MirroringMode.FOUR_SCREEN
+                    : header.mirroring;
+
+            return new Entry(path, attrs.size(), attrs.lastModifiedTime().toMillis(), header.mapper, mirroring,
+                    header.prgSize, header.chrSize, (int) prg.getValue(), (int) chr.getValue(), rom);
+        }
+    }
+
+    /**
+     * Computes the CRC32 of two concatenated blocks of data from the CRC32s
+     * of each, as zlib's {@code crc32_combine} does.
+     *
+     * <p>Appending a block to the first amounts to multiplying the CRC of
+     * the first by x^(8 * length) modulo the polynomial, and then adding
+     * (XORing) the CRC of the second. The multiplication is done by
+     * repeatedly squaring the matrix which shifts the CRC register by a
+     * single zero bit.</p>
+     *
+     * @param crc1 The CRC32 of the first block
+     * @param crc2 The CRC32 of the second block
+     * @param len2 The length of the second block in bytes
+     * @return The CRC32 of both blocks
+     */
+    static int combineCrc(int crc1, int crc2, long len2) {
+        if (len2 <= 0) {
+            return crc1;
+        }
+
+        int[] even = new int[32];
+        int[] odd = new int[32];
+
+        // operator for a single zero bit
+        odd[0] = CRC_POLYNOMIAL;
+        for (int n = 1; n < 32; n++) {
+            odd[n] = 1 << (n - 1);
+        }
+
+        // operators for two and then four zero bits
+        squareGf2Matrix(even, odd);
+        squareGf2Matrix(odd, even);
+
+        // apply an operator for each set bit of the length in bytes
+        do {
+            squareGf2Matrix(even, odd);
+            if ((len2 & 1) != 0) {
+                crc1 = multiplyGf2Matrix(even, crc1);
+            }
+            len2 >>= 1;
+
+            if (len2 == 0) {
+                break;
+            }
+
+            squareGf2Matrix(odd, even);
+            if ((len2 & 1) != 0) {
+                crc1 = multiplyGf2Matrix(odd, crc1);
+            }
+            len2 >>= 1;
+        } while (len2 != 0);
+
+        return crc1 ^ crc2;
+    }
+
+    private static int multiplyGf2Matrix(int[] mat, int vec) {
+        int sum = 0;
+        for (int i = 0; vec != 0; i++, vec >>>= 1) {
+            if ((vec & 1) != 0) {
+                sum ^= mat[i];
+            }
+        }
+        return sum;
+    }
+
+    private static void squareGf2Matrix(int[] square, int[] mat) {
+        for (int n = 0; n < 32; n++) {
+            square[n] = multiplyGf2Matrix(mat, mat[n]);
+        }
+    }
+
+    // the tasks are never serialized, despite ForkJoinTask being Serializable
+    private final class DirectoryTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final Path root;
+        private final Path dir;
+        private final Map<String, Entry> found;
+        private final AtomicInteger reads;
+        private final Collection<String> failed;
+
+        private DirectoryTask(Path root, Path dir, Map<String, Entry> found, AtomicInteger reads,
+                              Collection<String> failed) {
+            this.root = root;
+            this.dir = dir;
+            this.found = found;
+            this.reads = reads;
+            this.failed = failed;
+        }
+
+        @Override
+        protected void compute() {
+            List<RecursiveAction> tasks = new ArrayList<>();
+
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir)) {
+                for (Path file : stream) {
+                    BasicFileAttributes attrs;
+                    try {
+                        attrs = Files.readAttributes(file, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+                    } catch (IOException ex) {
+                        failed.add(relativePath(file));
+                        continue;
+                    }
+
+                    if (attrs.isDirectory()) {
+                        tasks.add(new DirectoryTask(root, file, found, reads, failed));
+                    } else if (attrs.isRegularFile()
+                            && file.getFileName().toString().toLowerCase(Locale.ROOT).endsWith(ROM_EXTENSION)) {
+                        tasks.add(new FileTask(file, attrs));
+                    }
+                }
+            } catch (IOException ex) {
+                skipDirectory(ex);
+            } catch (DirectoryIteratorException ex) {
+                skipDirectory(ex.getCause());
+            }
+
+            invokeAll(tasks);
+        }
+
+        // skips the rest of an unreadable directory, keeping what was already found in it
+        private void skipDirectory(IOException ex) {
+            if (dir.equals(root)) {
+                throw new UncheckedIOException(ex);
+            }
+            failed.add(relativePath(dir));
+        }
+
+        private String relativePath(Path file) {
+            return root.relativize(file).toString().replace(file.getFileSystem().getSeparator(), "/");
+        }
+
+        private final class FileTask extends RecursiveAction {
+
+            private static final long serialVersionUID = 1L;
+
+            private final Path file;
+            private final BasicFileAttributes attrs;
+
+            private FileTask(Path file, BasicFileAttributes attrs) {
+                this.file = file;
+                this.attrs = attrs;
+            }
+
+            @Override
+            protected void compute() {
+                String path = relativePath(file);
+
+                // reuse the previous entry if the file is unchanged
+                Entry entry = entries.get(path);
+                if (entry == null || entry.size != attrs.size()
+                        || entry.lastModified != attrs.lastModifiedTime().toMillis()) {
+                    try {
+                        entry = index(file, path, attrs);
+                    } catch (IOException ex) {
+                        failed.add(path);
+                        return;
+                    }
+                    reads.incrementAndGet();
+                }
+
+                if (entry != null) {
+                    found.put(path, entry);
+                }
+            }
+        }
+
+    }
+
+    /**
+     * The indexed properties of a single ROM file.
+     */
+    public static final class Entry {
+
+        private final String path;
+        private final long size;
+        private final long lastModified;
+        private final int mapper;
+        private final Cartridge.MirroringMode mirroring;
+        private final int prgSize;
+        private final int chrSize;
+        private final int prgCrc;
+        private final int chrCrc;
+        private final int romCrc;
+
+        private Entry(String path, long size, long lastModified, int mapper, Cartridge.MirroringMode mirroring,
+                      int prgSize, int chrSize, int prgCrc, int chrCrc, int romCrc) {
+            this.path = path;
+            this.size = size;
+            this.lastModified = lastModified;
+            this.mapper = mapper;
+            this.mirroring = mirroring;
+            this.prgSize = prgSize;
+            this.chrSize = chrSize;
+            this.prgCrc = prgCrc;
+            this.chrCrc = chrCrc;
+            this.romCrc = romCrc;
+        }
+
+        private static Entry read(DataInputStream input) throws IOException {
+            return new Entry(input.readUTF(), input.readLong(), input.readLong(), input.readUnsignedShort(),
+                    Cartridge.MirroringMode.values()[input.readUnsignedByte()],
+                    input.readInt(), input.readInt(), input.readInt(), input.readInt(), input.readInt());
+        }
+
+        private void write(DataOutputStream output) throws IOException {
+            output.writeUTF(path);
+            output.writeLong(size);
+            output.writeLong(lastModified);
+            output.writeShort(mapper);
+            output.writeByte(mirroring.ordinal());
+            output.writeInt(prgSize);
+            output.writeInt(chrSize);
+            output.writeInt(prgCrc);
+            output.writeInt(chrCrc);
+            output.writeInt(romCrc);
+        }
+
+        /**
+         * Gets the path of the ROM file relative to the root of the
+         * library.
+         *
+         * @return The relative path
+         */
+        public String getPath() {
+            return path;
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        public long getLastModified() {
+            return lastModified;
+        }
+
+        public int getMapper() {
+            return mapper;
+        }
+
+        /**
+         * Gets the nametable mirroring, which is
+         * {@link Cartridge.MirroringMode#FOUR_SCREEN} if the cartridge
+         * provides its own VRAM.
+         *
+         * @return The mirroring mode
+         */
+        public Cartridge.MirroringMode getMirroringMode() {
+            return mirroring;
+        }
+
+        public int getPrgSize() {
+            return prgSize;
+        }
+
+        public int getChrSize() {
+            return chrSize;
+        }
+
+        public int getPrgCrc() {
+            return prgCrc;
+        }
+
+        public int getChrCrc() {
+            return chrCrc;
+        }
+
+        /**
+         * Gets the CRC32 of the PRG and CHR ROM together, excluding the
+         * header and any trainer.
+         *
+         * @return The CRC32 of the ROM
+         */
+        public int getRomCrc() {
+            return romCrc;
+        }
+
+    }
+
+}
@@ -32,56 +32,58 @@ import net.caseif.jnes.model.Cartridge;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 
 public class RomLoader {
 
-    private static final int MAGIC = 0x4E45531A;
-    private static final int PRG_CHUNK_SIZE = 16384;
-    private static final int CHR_CHUNK_SIZE = 8192;
-
     public Cartridge load(InputStream input) throws IOException {
-        ByteBuffer buffer = toBuffer(input);
-
-        if (buffer.getInt() != MAGIC) {
-            throw new IllegalArgumentException("Bad NES header.");
-        }
-
-        int prgSize = buffer.get() * PRG_CHUNK_SIZE;
-        int chrSize = buffer.get() * CHR_CHUNK_SIZE;
-
-        byte flag6 = buffer.get();
-
-        Cartridge.MirroringMode mirroring = (flag6 & 0b1) == 0
-                ? Cartridge.MirroringMode.HORIZONTAL
-                : Cartridge.MirroringMode.VERTICAL;
-
-        boolean cartridgePrgRam = (flag6 & 0b10) != 0;
-
-        boolean hasTrainer = (flag6 & 0b100) != 0;
-
-        boolean ignoreMirroringControl = (flag6 & 0b1000) != 0;
-
-        byte mapper = (byte) (flag6 >> 4);
+        return load(toBuffer(input));
+    }
 
-        byte flag7 = (byte) (buffer.get() >> 4);
+    /**
+     * Loads the ROM file at the given path.
+     *
+     * <p>The file is memory-mapped rather than read through a stream, and the
+     * resulting cartridge is shared with every other load of the same file
+     * in this JVM for as long as any of them is in use. Cartridges are never
+     * modified by the emulator, so sharing them is safe.</p>
+     *
+     * @param path The path of the ROM file
+     * @return The loaded cartridge
+     * @throws IOException If the file can't be read
+     */
+    public Cartridge load(Path path) throws IOException {
+        return RomCache.get(path, this::loadMapped);
+    }
 
-        mapper |= (flag7 & 0b11110000);
+    private Cartridge loadMapped(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            // the mapping stays valid after the channel is closed, and is
+            // released once the buffer is collected
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return load(buffer);
+        }
+    }
 
-        // skip $8-15
-        buffer.position(buffer.position() + 8);
+    private Cartridge load(ByteBuffer buffer) {
+        RomHeader header = RomHeader.read(buffer);
 
-        // skip trainer
-        if (hasTrainer) {
-            buffer.position(buffer.position() + 512);
+        if (buffer.capacity() < header.getFileSize()) {
+            throw new IllegalArgumentException("Truncated ROM.");
         }
 
-        byte[] prg = new byte[prgSize];
+        buffer.position(header.getPrgOffset());
+
+        byte[] prg = new byte[header.prgSize];
         buffer.get(prg);
 
-        byte[] chr = new byte[chrSize];
+        byte[] chr = new byte[header.chrSize];
         buffer.get(chr);
 
-        return new Cartridge(prg, chr, mirroring, cartridgePrgRam, ignoreMirroringControl, mapper);
+        return header.createCartridge(prg, chr);
     }
 
 }
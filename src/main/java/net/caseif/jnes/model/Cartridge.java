@@ -27,21 +27,56 @@ package net.caseif.jnes.model;
 
 public class Cartridge {
 
+    // RAM assumed by iNES 1.0 headers, which can't specify it
+    private static final int DEFAULT_PRG_RAM_SIZE = 0x2000;
+    private static final int DEFAULT_CHR_RAM_SIZE = 0x2000;
+
     private final byte[] prg;
     private final byte[] chr;
     private final MirroringMode mirrorMode;
     private final boolean cartridgePrgRam;
     private final boolean ignoreMirroringControl;
-    private final byte mapper;
+    private final int mapper;
+    private final int submapper;
+    private final int prgRamSize;
+    private final int prgNvramSize;
+    private final int chrRamSize;
+    private final int chrNvramSize;
+    private final TimingRegion timingRegion;
+
+    /**
+     * Creates a cartridge as described by an iNES 1.0 header, with 8KB of PRG
+     * RAM, and 8KB of CHR RAM if it has no CHR ROM.
+     */
+    public Cartridge(byte[] prg, byte[] chr, MirroringMode mirrorMode, boolean cartridgePrgRam,
+                     boolean ignoreMirroringControl, int mapper) {
+        this(prg, chr, mirrorMode, cartridgePrgRam, ignoreMirroringControl, mapper, 0,
+                cartridgePrgRam ? 0 : DEFAULT_PRG_RAM_SIZE, cartridgePrgRam ? DEFAULT_PRG_RAM_SIZE : 0,
+                chr.length == 0 ? DEFAULT_CHR_RAM_SIZE : 0, 0, TimingRegion.NTSC);
+    }
 
+    /**
+     * Creates a cartridge as described by an NES 2.0 header.
+     *
+     * <p>The RAM sizes are exactly those allocated by the emulator, so a
+     * board without e.g. PRG RAM should specify 0.</p>
+     */
     public Cartridge(byte[] prg, byte[] chr, MirroringMode mirrorMode, boolean cartridgePrgRam,
-                     boolean ignoreMirroringControl, byte mapper) {
+                     boolean ignoreMirroringControl, int mapper, int submapper,
+                     int prgRamSize, int prgNvramSize, int chrRamSize, int chrNvramSize,
+                     TimingRegion timingRegion) {
         this.prg = prg;
         this.chr = chr;
         this.mirrorMode = mirrorMode;
         this.cartridgePrgRam = cartridgePrgRam;
         this.ignoreMirroringControl = ignoreMirroringControl;
         this.mapper = mapper;
+        this.submapper = submapper;
+        this.prgRamSize = prgRamSize;
+        this.prgNvramSize = prgNvramSize;
+        this.chrRamSize = chrRamSize;
+        this.chrNvramSize = chrNvramSize;
+        this.timingRegion = timingRegion;
     }
 
     public byte[] getPrgRom() {
@@ -56,6 +91,11 @@ public class Cartridge {
         return mirrorMode;
     }
 
+    /**
+     * Gets whether the cartridge's PRG RAM is battery-backed.
+     *
+     * @return Whether the PRG RAM is non-volatile
+     */
     public boolean hasCartridgePrgRam() {
         return cartridgePrgRam;
     }
@@ -64,13 +104,89 @@ public class Cartridge {
         return ignoreMirroringControl;
     }
 
-    public byte getMapper() {
+    public int getMapper() {
         return mapper;
     }
 
+    public int getSubmapper() {
+        return submapper;
+    }
+
+    /**
+     * Gets the size of the cartridge's volatile PRG RAM.
+     *
+     * @return The size in bytes
+     */
+    public int getPrgRamSize() {
+        return prgRamSize;
+    }
+
+    /**
+     * Gets the size of the cartridge's battery-backed PRG RAM.
+     *
+     * @return The size in bytes
+     */
+    public int getPrgNvramSize() {
+        return prgNvramSize;
+    }
+
+    /**
+     * Gets the size of the cartridge's volatile CHR RAM.
+     *
+     * @return The size in bytes
+     */
+    public int getChrRamSize() {
+        return chrRamSize;
+    }
+
+    /**
+     * Gets the size of the cartridge's battery-backed CHR RAM.
+     *
+     * @return The size in bytes
+     */
+    public int getChrNvramSize() {
+        return chrNvramSize;
+    }
+
+    public TimingRegion getTimingRegion() {
+        return timingRegion;
+    }
+
     public enum MirroringMode {
-        HORIZONTAL,
-        VERTICAL
+        HORIZONTAL(0, 0, 1, 1),
+        VERTICAL(0, 1, 0, 1),
+        SINGLE_SCREEN_LOWER(0, 0, 0, 0),
+        SINGLE_SCREEN_UPPER(1, 1, 1, 1),
+        FOUR_SCREEN(0, 1, 2, 3);
+
+        private final int[] banks;
+
+        MirroringMode(int... banks) {
+            this.banks = banks;
+        }
+
+        /**
+         * Gets the 1KB nametable bank mapped to the given nametable slot.
+         *
+         * @param slot The nametable slot, in the range 0-3
+         * @return The bank mapped to the slot
+         */
+        public int getBank(int slot) {
+            return banks[slot];
+        }
+    }
+
+    /**
+     * The CPU/PPU timing a cartridge was made for.
+     */
+    public enum TimingRegion {
+        NTSC,
+        PAL,
+        /**
+         * Runs on either NTSC or PAL consoles.
+         */
+        MULTI_REGION,
+        DENDY
     }
 
 }
@@ -130,6 +130,8 @@ public class Instruction {
     private static final List<Mnemonic> MNEMONIC_LIST;
     private static final List<AddressingMode> ADDR_MODE_LIST;
 
+    private static final List<Integer> CYCLE_LIST;
+
     private static final List<Instruction> INSTR_LIST;
     private static final Map<Instruction, Integer> OPCODE_MAP;
 
@@ -174,8 +176,29 @@ public class Instruction {
                 REL, IZY, IMP, IZY, ZPX, ZPX, ZPX, ZPX, IMP, ABY, IMP, ABY, ABX, ABX, ABX, ABX
         );
 
+        // base cycle counts, excluding page-crossing and branch penalties
+        CYCLE_LIST = ImmutableList.of(
+                7, 6, 2, 8, 3, 3, 5, 5, 3, 2, 2, 2, 4, 4, 6, 6,
+                2, 5, 2, 8, 4, 4, 6, 6, 2, 4, 2, 7, 4, 4, 7, 7,
+                6, 6, 2, 8, 3, 3, 5, 5, 4, 2, 2, 2, 4, 4, 6, 6,
+                2, 5, 2, 8, 4, 4, 6, 6, 2, 4, 2, 7, 4, 4, 7, 7,
+                6, 6, 2, 8, 3, 3, 5, 5, 3, 2, 2, 2, 3, 4, 6, 6,
+                2, 5, 2, 8, 4, 4, 6, 6, 2, 4, 2, 7, 4, 4, 7, 7,
+                6, 6, 2, 8, 3, 3, 5, 5, 4, 2, 2, 2, 5, 4, 6, 6,
+                2, 5, 2, 8, 4, 4, 6, 6, 2, 4, 2, 7, 4, 4, 7, 7,
+                2, 6, 2, 6, 3, 3, 3, 3, 2, 2, 2, 2, 4, 4, 4, 4,
+                2, 6, 2, 6, 4, 4, 4, 4, 2, 5, 2, 5, 5, 5, 5, 5,
+                2, 6, 2, 6, 3, 3, 3, 3, 2, 2, 2, 2, 4, 4, 4, 4,
+                2, 5, 2, 5, 4, 4, 4, 4, 2, 4, 2, 4, 4, 4, 4, 4,
+                2, 6, 2, 8, 3, 3, 5, 5, 2, 2, 2, 2, 4, 4, 6, 6,
+                2, 5, 2, 8, 4, 4, 6, 6, 2, 4, 2, 7, 4, 4, 7, 7,
+                2, 6, 2, 8, 3, 3, 5, 5, 2, 2, 2, 2, 4, 4, 6, 6,
+                2, 5, 2, 8, 4, 4, 6, 6, 2, 4, 2, 7, 4, 4, 7, 7
+        );
+
         assert MNEMONIC_LIST.size() == 256;
         assert ADDR_MODE_LIST.size() == 256;
+        assert CYCLE_LIST.size() == 256;
 
         INSTR_LIST = IntStream.range(0, 256)
                 .mapToObj(i -> Instruction.of(MNEMONIC_LIST.get(i), ADDR_MODE_LIST.get(i)))
@@ -207,6 +230,42 @@ public class Instruction {
         return INSTR_LIST.get(opcodei);
     }
 
+    /**
+     * Gets the base number of cycles taken by the given opcode, excluding
+     * any penalties for crossing a page boundary or taking a branch.
+     *
+     * @param opcode The opcode to look up
+     * @return The base cycle count of the opcode
+     */
+    public static int getBaseCycles(byte opcode) {
+        int opcodei = opcode < 0 ? opcode + 256 : opcode;
+        return CYCLE_LIST.get(opcodei);
+    }
+
+    /**
+     * Returns whether this instruction takes an additional cycle when its
+     * effective address crosses a page boundary.
+     *
+     * <p>This applies to instructions which only read from memory using an
+     * indexed addressing mode. Writes and read-modify-write instructions
+     * always take the extra cycle, so it is part of their base count.</p>
+     *
+     * @return Whether this instruction has a page-crossing penalty
+     */
+    public boolean hasPageCrossPenalty() {
+        switch (addrMode) {
+            case ABX:
+            case ABY:
+            case IZY:
+                return mnemonic.getType() == Mnemonic.Type.R
+                        || mnemonic == NOP
+                        || mnemonic == LAX
+                        || mnemonic == LAS;
+            default:
+                return false;
+        }
+    }
+
     public short getOpcode() {
         Preconditions.checkArgument(OPCODE_MAP.containsKey(this), "Bad instruction " + this);
         return OPCODE_MAP.get(this).shortValue();
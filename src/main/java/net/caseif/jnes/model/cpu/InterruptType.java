@@ -27,8 +27,8 @@ package net.caseif.jnes.model.cpu;
 
 public enum InterruptType {
 
-    RESET(0xFFFA, false, true, false, false),
-    NMI(0xFFFC, false, false, false, false),
+    RESET(0xFFFC, false, false, false, true),
+    NMI(0xFFFA, false, true, false, true),
     IRQ(0xFFFE, true, true, false, true),
     BRK(0xFFFE, false, true, true, true);
 
@@ -25,7 +25,6 @@
 
 package net.caseif.jnes.util;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.ByteBuffer;
@@ -33,14 +32,7 @@ import java.nio.ByteBuffer;
 public class IoHelper {
 
     public static ByteBuffer toBuffer(InputStream input) throws IOException {
-        ByteArrayOutputStream output = new ByteArrayOutputStream();
-        byte[] buffer = new byte[1024];
-        int read;
-        while ((read = input.read(buffer)) != -1) {
-            output.write(buffer, 0, read);
-        }
-        output.flush();
-        return ByteBuffer.wrap(output.toByteArray());
+        return ByteBuffer.wrap(input.readAllBytes());
     }
 
 }
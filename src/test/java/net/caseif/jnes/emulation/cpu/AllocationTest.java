@@ -0,0 +1,78 @@
+/*
+ * This file is a part of jNES.
+ * Copyright (c) 2018-2019, Max Roncace <mproncace@gmail.com>
+ *
+ * The MIT License
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package net.caseif.jnes.emulation.cpu;
+
+import static net.caseif.jnes.emulation.cpu.CpuTestHelper.loadPrg;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+
+public class AllocationTest {
+
+    private static final int WARMUP_INSTRUCTIONS = 1_000_000;
+    private static final int MEASURED_INSTRUCTIONS = 1_000_000;
+
+    private static CpuInterpreter ci;
+
+    @BeforeAll
+    public static void init() throws IOException {
+        ci = loadPrg("/cpu_tests/steady_state.bin");
+    }
+
+    @Test
+    public void testSteadyStateAllocation() {
+        com.sun.management.ThreadMXBean threadBean
+                = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        assumeTrue(threadBean.isThreadAllocatedMemorySupported(), "Allocation counters are not supported");
+        threadBean.setThreadAllocatedMemoryEnabled(true);
+
+        long threadId = Thread.currentThread().getId();
+
+        // get everything loaded, linked and compiled first
+        execute(WARMUP_INSTRUCTIONS);
+
+        // account for anything allocated by querying the counter itself
+        long overhead = -threadBean.getThreadAllocatedBytes(threadId) + threadBean.getThreadAllocatedBytes(threadId);
+
+        long before = threadBean.getThreadAllocatedBytes(threadId);
+        execute(MEASURED_INSTRUCTIONS);
+        long allocated = threadBean.getThreadAllocatedBytes(threadId) - before - overhead;
+
+        assertEquals(0, allocated, "Bytes allocated over " + MEASURED_INSTRUCTIONS + " instructions");
+    }
+
+    private static void execute(int count) {
+        for (int i = 0; i < count; i++) {
+            ci.executeNext();
+        }
+    }
+
+}
@@ -0,0 +1,89 @@
+/*
+ * This file is a part of jNES.
+ * Copyright (c) 2018-2019, Max Roncace <mproncace@gmail.com>
+ *
+ * The MIT License
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package net.caseif.jnes.emulation.cpu;
+
+import static net.caseif.jnes.emulation.cpu.CpuTestHelper.loadPrg;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+
+public class BlockCompilerTest {
+
+    private static final int BLOCKS = 100_000;
+    private static final int FRAMES = 10;
+
+    @Test
+    public void testCompiledMatchesInterpreted() throws IOException {
+        CpuInterpreter interpreted = loadPrg("/cpu_tests/steady_state.bin");
+        CpuInterpreter compiled = loadPrg("/cpu_tests/steady_state.bin");
+        compiled.setCompilationEnabled(true);
+
+        for (int i = 0; i < BLOCKS; i++) {
+            compiled.tick();
+
+            // catch the interpreter up to the end of the same block
+            while (interpreted.getCycles() < compiled.getCycles()) {
+                interpreted.tick();
+            }
+
+            assertEquals(interpreted.getCycles(), compiled.getCycles(), "Cycles after block " + i);
+            assertEquals(interpreted.regs.getPc(), compiled.regs.getPc(), "PC after block " + i);
+            assertEquals(interpreted.regs.getAcc(), compiled.regs.getAcc(), "A after block " + i);
+            assertEquals(interpreted.regs.getX(), compiled.regs.getX(), "X after block " + i);
+            assertEquals(interpreted.regs.getY(), compiled.regs.getY(), "Y after block " + i);
+            assertEquals(interpreted.regs.getSp(), compiled.regs.getSp(), "SP after block " + i);
+            assertEquals(interpreted.getStatus().serialize(), compiled.getStatus().serialize(),
+                    "P after block " + i);
+        }
+
+        assertArrayEquals(interpreted.memory.getRam(), compiled.memory.getRam());
+    }
+
+    @Test
+    public void testInterruptsMatchInterpreted() throws IOException {
+        for (boolean catchUp : new boolean[] { true, false }) {
+            CpuInterpreter interpreted = loadPrg("/cpu_tests/ppu_sync.bin");
+            CpuInterpreter compiled = loadPrg("/cpu_tests/ppu_sync.bin");
+            interpreted.setPpuCatchUpEnabled(catchUp);
+            compiled.setPpuCatchUpEnabled(catchUp);
+            compiled.setCompilationEnabled(true);
+
+            for (int frame = 0; frame < FRAMES; frame++) {
+                interpreted.runUntilFrameComplete();
+                compiled.runUntilFrameComplete();
+
+                String desc = " in frame " + frame + (catchUp ? " with catch-up" : " in lockstep");
+                assertArrayEquals(interpreted.memory.getRam(), compiled.memory.getRam(), "RAM" + desc);
+                assertArrayEquals(interpreted.getPpu().getFrameBuffer(), compiled.getPpu().getFrameBuffer(),
+                        "Frame" + desc);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,73 @@
+/*
+ * This file is a part of jNES.
+ * Copyright (c) 2018-2019, Max Roncace <mproncace@gmail.com>
+ *
+ * The MIT License
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package net.caseif.jnes.emulation.cpu;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import net.caseif.jnes.model.Cartridge;
+
+import org.junit.jupiter.api.Test;
+
+public class CpuMemoryTest {
+
+    @Test
+    public void testMirroring() {
+        CpuInterpreter ci = new CpuInterpreter(new Cartridge(new byte[16384], new byte[0],
+                Cartridge.MirroringMode.HORIZONTAL, false, false, 0));
+
+        ci.memory.write(0x0123, (byte) 0x45);
+        assertEquals(0x45, ci.memory.read(0x0923));
+        assertEquals(0x45, ci.memory.read(0x1923));
+
+        // writes to ROM are ignored
+        ci.memory.write(0x8000, (byte) 0x45);
+        assertEquals(0x00, ci.memory.read(0x8000));
+    }
+
+    @Test
+    public void testBankSwitch() {
+        byte[] prg = new byte[32768];
+        // bank 0: LDA #$01, bank 1: LDA #$02
+        prg[0x0000] = (byte) 0xA9;
+        prg[0x0001] = 0x01;
+        prg[0x4000] = (byte) 0xA9;
+        prg[0x4001] = 0x02;
+
+        CpuInterpreter ci = new CpuInterpreter(new Cartridge(prg, new byte[0],
+                Cartridge.MirroringMode.HORIZONTAL, false, false, 0));
+
+        ci.tick();
+        assertEquals(0x01, ci.regs.getAcc());
+
+        // swap bank 1 into $8000 and run the same address again
+        ci.memory.mapMemory(0x80, 0x40, prg, 0x4000, false);
+        ci.regs.setPc((short) 0x8000);
+
+        ci.tick();
+        assertEquals(0x02, ci.regs.getAcc());
+    }
+
+}
@@ -29,32 +29,30 @@ import net.caseif.jnes.model.Cartridge;
 import net.caseif.jnes.model.cpu.Instruction;
 import net.caseif.jnes.model.cpu.Mnemonic;
 import net.caseif.jnes.util.IoHelper;
-import net.caseif.jnes.util.exception.CpuHaltedException;
 
 import static org.junit.jupiter.api.Assertions.fail;
 
 import java.io.IOException;
 
-
 public class CpuTestHelper {
 
     static CpuInterpreter loadPrg(String file) throws IOException {
         byte[] prg = IoHelper.toBuffer(CpuTestHelper.class.getResourceAsStream(file)).array();
         byte[] prgExtended = new byte[16384];
         System.arraycopy(prg, 0, prgExtended, 0, prg.length);
-        Cartridge cart = new Cartridge(prgExtended, new byte[0], Cartridge.MirroringMode.HORIZONTAL, false, false, (byte) 0);
+        Cartridge cart = new Cartridge(prgExtended, new byte[0], Cartridge.MirroringMode.HORIZONTAL, false, false, 0);
 
         return new CpuInterpreter(cart);
     }
 
     static void runCpuOnce(CpuInterpreter ci) {
-        try {
-            do {
-                ci.tick();
-            } while (Instruction.fromOpcode(ci.peekPrg()).getMnemonic() != Mnemonic.NOP);
-        } catch (CpuHaltedException ex) {
-            fail("CPU halted prematurely (PC=0x" + Integer.toHexString(ci.regs.getPc()) + ").");
-        }
+        do {
+            ci.tick();
+
+            if (ci.isHalted()) {
+                fail("CPU halted prematurely (PC=0x" + Integer.toHexString(ci.regs.getPc()) + ").");
+            }
+        } while (Instruction.fromOpcode(ci.peekPrg()).getMnemonic() != Mnemonic.NOP);
     }
 
 }
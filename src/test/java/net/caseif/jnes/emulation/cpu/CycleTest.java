@@ -0,0 +1,76 @@
+/*
+ * This file is a part of jNES.
+ * Copyright (c) 2018-2019, Max Roncace <mproncace@gmail.com>
+ *
+ * The MIT License
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package net.caseif.jnes.emulation.cpu;
+
+import static net.caseif.jnes.emulation.cpu.CpuTestHelper.loadPrg;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+
+public class CycleTest {
+
+    private static CpuInterpreter ci;
+
+    @BeforeAll
+    public static void init() throws IOException {
+        ci = loadPrg("/cpu_tests/cycles.bin");
+    }
+
+    @Test
+    public void testCycles() {
+        int[] expected = new int[] {
+                2,  // LDA #$01
+                3,  // STA $00
+                2,  // LDX #$01
+                5,  // LDA $80FF,X (page crossed)
+                4,  // LDA $8000,X
+                5,  // STA $0200,X
+                5,  // INC $00
+                7,  // INC $0200,X
+                2,  // LDA #$01
+                2,  // BEQ (not taken)
+                3,  // BNE (taken)
+                6,  // JSR
+                6,  // RTS
+                3,  // JMP
+                4,  // BNE (taken, page crossed)
+                2   // NOP
+        };
+
+        long total = 0;
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals(expected[i], ci.tick(), "Cycles for instruction " + i);
+            total += expected[i];
+        }
+
+        assertEquals(0x8101, ci.regs.getPc());
+        assertEquals(total, ci.getCycles());
+    }
+
+}
@@ -0,0 +1,63 @@
+/*
+ * This file is a part of jNES.
+ * Copyright (c) 2018-2019, Max Roncace <mproncace@gmail.com>
+ *
+ * The MIT License
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package net.caseif.jnes.emulation.cpu;
+
+import static net.caseif.jnes.emulation.cpu.CpuTestHelper.loadPrg;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+
+public class PpuSchedulingTest {
+
+    private static final int FRAMES = 10;
+
+    @Test
+    public void testCatchUpMatchesLockstep() throws IOException {
+        CpuInterpreter lockstep = loadPrg("/cpu_tests/ppu_sync.bin");
+        lockstep.setPpuCatchUpEnabled(false);
+        CpuInterpreter catchUp = loadPrg("/cpu_tests/ppu_sync.bin");
+
+        for (int i = 0; i < FRAMES; i++) {
+            RunResult expected = lockstep.runUntilFrameComplete();
+            RunResult actual = catchUp.runUntilFrameComplete();
+
+            assertEquals(expected.getCycles(), actual.getCycles(), "Cycles in frame " + i);
+            assertEquals(expected.getFrames(), actual.getFrames(), "Frames in frame " + i);
+            assertEquals(lockstep.regs.getPc(), catchUp.regs.getPc(), "PC after frame " + i);
+            assertArrayEquals(lockstep.memory.getRam(), catchUp.memory.getRam(), "RAM after frame " + i);
+            assertArrayEquals(lockstep.getPpu().getFrameBuffer(), catchUp.getPpu().getFrameBuffer(),
+                    "Frame " + i);
+        }
+
+        // make sure NMIs were actually taken
+        assertTrue(catchUp.memory.read(0x11) > 0);
+    }
+
+}
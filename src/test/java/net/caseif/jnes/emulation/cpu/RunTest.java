@@ -0,0 +1,224 @@
+/*
+ * This file is a part of jNES.
+ * Copyright (c) 2018-2019, Max Roncace <mproncace@gmail.com>
+ *
+ * The MIT License
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package net.caseif.jnes.emulation.cpu;
+
+import static net.caseif.jnes.emulation.cpu.CpuTestHelper.loadPrg;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import net.caseif.jnes.model.Cartridge;
+import net.caseif.jnes.model.cpu.HaltReason;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+
+public class RunTest {
+
+    @Test
+    public void testRunCycles() throws IOException {
+        CpuInterpreter ci = loadPrg("/cpu_tests/steady_state.bin");
+
+        RunResult result = ci.runCycles(100000);
+        assertFalse(result.isHalted());
+        // may overshoot by at most one instruction
+        assertTrue(result.getCycles() >= 100000 && result.getCycles() < 100000 + 8);
+        assertEquals(ci.getCycles(), result.getCycles());
+    }
+
+    @Test
+    public void testRunUntilFrameComplete() throws IOException {
+        CpuInterpreter ci = loadPrg("/cpu_tests/steady_state.bin");
+
+        RunResult first = ci.runUntilFrameComplete();
+        assertEquals(1, first.getFrames());
+        assertEquals(HaltReason.NONE, first.getHaltReason());
+
+        RunResult second = ci.runUntilFrameComplete();
+        assertEquals(1, second.getFrames());
+        assertEquals(2, ci.getPpu().getFrameCount());
+    }
+
+    @Test
+    public void testHalt() {
+        byte[] prg = new byte[16384];
+        prg[0] = (byte) 0xEA; // NOP
+        prg[1] = 0x02;        // KIL
+
+        CpuInterpreter ci = new CpuInterpreter(new Cartridge(prg, new byte[0], Cartridge.MirroringMode.HORIZONTAL,
+                false, false, 0));
+
+        RunResult result = ci.runCycles(1000);
+        assertEquals(HaltReason.KIL, result.getHaltReason());
+        // NOP and KIL take 2 cycles each
+        assertEquals(4, result.getCycles());
+        assertTrue(ci.isHalted());
+
+        // a halted CPU stays halted
+        assertEquals(0, ci.tick());
+    }
+
+    @Test
+    public void testMirroredPrg() {
+        byte[] prg = new byte[16384];
+        prg[0] = 0x4C;          // JMP $C003
+        prg[1] = 0x03;
+        prg[2] = (byte) 0xC0;
+        prg[3] = 0x4C;          // JMP $5000
+        prg[4] = 0x00;
+        prg[5] = 0x50;
+
+        CpuInterpreter ci = new CpuInterpreter(new Cartridge(prg, new byte[0], Cartridge.MirroringMode.HORIZONTAL,
+                false, false, 0));
+
+        // a 16KB cart is mirrored at $C000, so the code there is still in bounds
+        assertEquals(3, ci.tick());
+        assertFalse(ci.isHalted());
+        assertEquals(0xC003, ci.regs.getPc());
+
+        // but nothing is mapped at $5000
+        ci.tick();
+        assertEquals(HaltReason.PC_OUT_OF_BOUNDS, ci.getHaltReason());
+    }
+
+    @Test
+    public void testIndirectJumpWrap() {
+        byte[] prg = new byte[16384];
+        prg[0] = 0x6C;          // JMP ($02FF)
+        prg[1] = (byte) 0xFF;
+        prg[2] = 0x02;
+        prg[0x100] = 0x6C;      // JMP ($FFFF)
+        prg[0x101] = (byte) 0xFF;
+        prg[0x102] = (byte) 0xFF;
+        // $FFFF and $FF00 point back to $8100
+        prg[0x3FFF] = 0x00;
+        prg[0x3F00] = (byte) 0x81;
+
+        CpuInterpreter ci = new CpuInterpreter(new Cartridge(prg, new byte[0], Cartridge.MirroringMode.HORIZONTAL,
+                false, false, 0));
+        ci.memory.write(0x2FF, (byte) 0x00);
+        ci.memory.write(0x200, (byte) 0x81);
+        ci.memory.write(0x300, (byte) 0x90);
+
+        // the high byte comes from the start of the pointer's page
+        ci.tick();
+        assertEquals(0x8100, ci.regs.getPc());
+
+        ci.tick();
+        assertEquals(0x8100, ci.regs.getPc());
+        assertFalse(ci.isHalted());
+    }
+
+    @Test
+    public void testExecutionFailure() {
+        byte[] prg = new byte[16384];
+        prg[0] = (byte) 0xA9;   // LDA #$01
+        prg[1] = 0x01;
+        prg[2] = (byte) 0x8D;   // STA $5000
+        prg[3] = 0x00;
+        prg[4] = 0x50;
+
+        CpuInterpreter ci = new CpuInterpreter(new Cartridge(prg, new byte[0], Cartridge.MirroringMode.HORIZONTAL,
+                false, false, 0));
+        ci.memory.mapIo(0x50, 1, new CpuMemory.IoHandler() {
+            @Override
+            public byte read(int addr) {
+                return 0;
+            }
+
+            @Override
+            public void write(int addr, byte value) {
+                throw new IllegalStateException();
+            }
+        });
+
+        // the failure names the instruction as it was fetched, not whatever
+        // precedes the program counter afterwards
+        RuntimeException ex = assertThrows(RuntimeException.class, () -> ci.runCycles(100));
+        assertTrue(ex.getMessage().endsWith("STA_ABS @ $8002"), ex.getMessage());
+        assertTrue(ex.getCause() instanceof IllegalStateException);
+    }
+
+    @Test
+    public void testOamDma() {
+        byte[] prg = new byte[16384];
+        prg[0] = (byte) 0xA9; // LDA #$02
+        prg[1] = 0x02;
+        prg[2] = (byte) 0x8D; // STA $4014
+        prg[3] = 0x14;
+        prg[4] = 0x40;
+        prg[5] = 0x02;        // KIL
+
+        CpuInterpreter ci = new CpuInterpreter(new Cartridge(prg, new byte[0], Cartridge.MirroringMode.HORIZONTAL,
+                false, false, 0));
+        for (int i = 0; i < 256; i++) {
+            ci.memory.write(0x200 + i, (byte) i);
+        }
+
+        RunResult result = ci.runCycles(1000);
+        assertEquals(HaltReason.KIL, result.getHaltReason());
+        // the DMA begins on an even cycle, so it stalls the CPU for 513 cycles
+        assertEquals(2 + 4 + 513 + 2, result.getCycles());
+
+        ci.getPpu().writeMmio((byte) 3, (byte) 0x80);
+        assertEquals((byte) 0x80, ci.getPpu().readMmio((byte) 4));
+    }
+
+    @Test
+    public void testIrqLine() {
+        byte[] prg = new byte[16384];
+        prg[0] = 0x58;          // CLI
+        prg[1] = (byte) 0xEA;   // NOP
+        prg[2] = 0x4C;          // JMP $8001
+        prg[3] = 0x01;
+        prg[4] = (byte) 0x80;
+        prg[0x10] = (byte) 0xE8; // INX
+        prg[0x11] = 0x40;        // RTI
+        // the IRQ vector points to $8010
+        prg[0x3FFE] = 0x10;
+        prg[0x3FFF] = (byte) 0x80;
+
+        CpuInterpreter ci = new CpuInterpreter(new Cartridge(prg, new byte[0], Cartridge.MirroringMode.HORIZONTAL,
+                false, false, 0));
+
+        ci.runCycles(100);
+        assertEquals(0, ci.regs.getX());
+
+        // the line is level-triggered, so the IRQ is taken again after each RTI
+        ci.setIrqLine(CpuInterpreter.IRQ_SOURCE_MAPPER, true);
+        ci.runCycles(100);
+        assertTrue(ci.regs.getX() > 1);
+
+        ci.setIrqLine(CpuInterpreter.IRQ_SOURCE_MAPPER, false);
+        ci.runCycles(20);
+        int x = ci.regs.getX();
+        ci.runCycles(100);
+        assertEquals(x, ci.regs.getX());
+    }
+
+}
@@ -0,0 +1,117 @@
+/*
+ * This file is a part of jNES.
+ * Copyright (c) 2018-2019, Max Roncace <mproncace@gmail.com>
+ *
+ * The MIT License
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package net.caseif.jnes.emulation.cpu;
+
+import static net.caseif.jnes.emulation.cpu.CpuTestHelper.loadPrg;
+import static net.caseif.jnes.emulation.cpu.CpuTestHelper.runCpuOnce;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import net.caseif.jnes.emulation.cpu.trace.AsyncFileTracer;
+import net.caseif.jnes.emulation.cpu.trace.RingBufferTracer;
+import net.caseif.jnes.emulation.cpu.trace.TraceEntry;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+
+public class TracerTest {
+
+    @Test
+    public void testRingBuffer() throws IOException {
+        CpuInterpreter ci = loadPrg("/cpu_tests/interrupt.bin");
+
+        RingBufferTracer tracer = new RingBufferTracer(3);
+        ci.setTracer(tracer);
+
+        // SEC, BRK, CLC, LDX, RTI, LDA, LDY
+        runCpuOnce(ci);
+
+        long[] entries = tracer.getEntries();
+        assertEquals(3, entries.length);
+
+        // RTI, LDA, LDY
+        assertEquals(0x40, TraceEntry.getOpcode(entries[0]));
+        assertEquals(0xA9, TraceEntry.getOpcode(entries[1]));
+        assertEquals(0xA0, TraceEntry.getOpcode(entries[2]));
+        assertEquals(0x8002, TraceEntry.getPc(entries[1]));
+        assertEquals(0x01, TraceEntry.getAcc(entries[2]));
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        tracer.dump(new PrintStream(out));
+        assertTrue(out.toString().contains("$8004  A0  LDY_IMM"));
+    }
+
+    @Test
+    public void testAsyncFile() throws IOException {
+        CpuInterpreter ci = loadPrg("/cpu_tests/interrupt.bin");
+
+        Path file = Files.createTempFile("jnes-trace", ".txt");
+        try {
+            try (AsyncFileTracer tracer = new AsyncFileTracer(file)) {
+                ci.setTracer(tracer);
+
+                runCpuOnce(ci);
+            }
+
+            List<String> lines = Files.readAllLines(file);
+            assertEquals(7, lines.size());
+            assertTrue(lines.get(0).startsWith("$8000  38  SEC_IMP"));
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void testAsyncFileFailure() throws IOException {
+        // every write to this device fails
+        Path file = Paths.get("/dev/full");
+        if (!Files.isWritable(file)) {
+            return;
+        }
+
+        AsyncFileTracer tracer = new AsyncFileTracer(file);
+
+        // enough to fill every chunk several times over, so this would block if chunks stopped being recycled
+        for (int i = 0; i < 100000; i++) {
+            tracer.trace(TraceEntry.pack(0x8000, 0xEA, 0, 0, 0, 0xFD, 0x24));
+        }
+
+        assertThrows(IOException.class, tracer::close);
+
+        // further entries are ignored once closed
+        tracer.trace(0);
+        tracer.close();
+    }
+
+}
@@ -0,0 +1,261 @@
+/*
+ * This file is a part of jNES.
+ * Copyright (c) 2018-2019, Max Roncace <mproncace@gmail.com>
+ *
+ * The MIT License
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package net.caseif.jnes.emulation.mapper;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import net.caseif.jnes.emulation.cpu.CpuInterpreter;
+import net.caseif.jnes.emulation.cpu.CpuMemory;
+import net.caseif.jnes.emulation.ppu.PpuEmulator;
+import net.caseif.jnes.emulation.ppu.PpuEvent;
+import net.caseif.jnes.emulation.ppu.PpuMemory;
+import net.caseif.jnes.model.Cartridge;
+
+import org.junit.jupiter.api.Test;
+
+public class MapperTest {
+
+    private static final int PRG_BANK_SIZE = 0x4000;
+    private static final int CHR_BANK_SIZE = 0x1000;
+
+    private CpuInterpreter ci;
+    private CpuMemory cpuMemory;
+    private PpuMemory ppuMemory;
+
+    @Test
+    public void testNrom() {
+        load(0, 1, 2);
+
+        // a single bank is mirrored at $C000
+        assertPrg(0x8000, 0);
+        assertPrg(0xC000, 0);
+        assertChr(0x1000, 1);
+
+        // writes to ROM are ignored, but PRG RAM is writable
+        cpuMemory.write(0x8000, (byte) 0x45);
+        assertPrg(0x8000, 0);
+        cpuMemory.write(0x6010, (byte) 0x45);
+        assertEquals(0x45, cpuMemory.read(0x6010));
+    }
+
+    @Test
+    public void testUxRom() {
+        load(2, 8, 0);
+
+        assertPrg(0x8000, 0);
+        assertPrg(0xC000, 7);
+
+        cpuMemory.write(0x8000, (byte) 5);
+        assertPrg(0x8000, 5);
+        assertPrg(0xC000, 7);
+    }
+
+    @Test
+    public void testCnRom() {
+        load(3, 2, 8);
+
+        assertChr(0x0000, 0);
+
+        cpuMemory.write(0xFFFF, (byte) 3);
+        assertChr(0x0000, 6);
+        assertChr(0x1000, 7);
+        assertPrg(0xC000, 1);
+    }
+
+    @Test
+    public void testAxRom() {
+        load(7, 8, 0);
+
+        assertPrg(0x8000, 0);
+        assertPrg(0xC000, 1);
+
+        ppuMemory.write((short) 0x2000, (byte) 1);
+        cpuMemory.write(0x8000, (byte) 0b10010);
+        assertPrg(0x8000, 4);
+        assertPrg(0xC000, 5);
+        // the upper nametable is now mapped to every slot
+        assertEquals(0, ppuMemory.read((short) 0x2000));
+
+        cpuMemory.write(0x8000, (byte) 0);
+        assertEquals(1, ppuMemory.read((short) 0x2C00));
+    }
+
+    @Test
+    public void testMmc1() {
+        load(1, 16, 8);
+
+        // the last bank is fixed at $C000 on power-on
+        assertPrg(0xC000, 15);
+
+        // select bank 3 at $8000
+        writeMmc1(0xE000, 3);
+        assertPrg(0x8000, 3);
+        assertPrg(0xC000, 15);
+
+        // fix the first bank at $8000 instead, with 4KB CHR banks and
+        // vertical mirroring
+        writeMmc1(0x8000, 0b11010);
+        assertPrg(0x8000, 0);
+        assertPrg(0xC000, 3);
+
+        writeMmc1(0xA000, 5);
+        writeMmc1(0xC000, 2);
+        assertChr(0x0000, 5);
+        assertChr(0x1000, 2);
+
+        ppuMemory.write((short) 0x2400, (byte) 1);
+        assertEquals(1, ppuMemory.read((short) 0x2C00));
+
+        // 32KB mode ignores the low bit of the bank
+        writeMmc1(0x8000, 0b00000);
+        writeMmc1(0xE000, 5);
+        assertPrg(0x8000, 4);
+        assertPrg(0xC000, 5);
+
+        // a reset partway through a write discards the bits written so far
+        cpuMemory.write(0xE000, (byte) 1);
+        cpuMemory.write(0xE000, (byte) 0x80);
+        writeMmc1(0xE000, 2);
+        assertPrg(0x8000, 2);
+        assertPrg(0xC000, 15);
+    }
+
+    @Test
+    public void testMmc3() {
+        // 8KB PRG and 1KB CHR banks
+        load(4, 8, 64);
+
+        // the second-last bank is fixed at $C000
+        assertPrg(0xC000, 7);
+
+        // R6 at $8000, R7 at $A000
+        writeMmc3(6, 4);
+        writeMmc3(7, 6);
+        assertPrg(0x8000, 2);
+        assertPrg(0xA000, 3);
+
+        // 2KB banks at $0000-$0FFF and 1KB banks at $1000-$1FFF
+        writeMmc3(0, 8);
+        writeMmc3(2, 12);
+        assertChr(0x0000, 2);
+        assertChr(0x1000, 3);
+
+        // invert both the PRG and CHR layouts
+        cpuMemory.write(0x8000, (byte) 0xC0);
+        assertPrg(0x8000, 7);
+        assertPrg(0xC000, 2);
+        assertChr(0x1000, 2);
+
+        ppuMemory.write((short) 0x2000, (byte) 1);
+        cpuMemory.write(0xA000, (byte) 0);
+        assertEquals(1, ppuMemory.read((short) 0x2800));
+        cpuMemory.write(0xA000, (byte) 1);
+        assertEquals(1, ppuMemory.read((short) 0x2400));
+    }
+
+    @Test
+    public void testMmc3Irq() {
+        load(4, 2, 2);
+        PpuEmulator ppu = ci.getPpu();
+
+        // sprites from the upper pattern table, so A12 rises once per line,
+        // and no background so that sprite 0 can't be hit
+        cpuMemory.write(0x2000, (byte) 0x08);
+        cpuMemory.write(0x2001, (byte) 0x10);
+        cpuMemory.write(0xC000, (byte) 10);
+        cpuMemory.write(0xC001, (byte) 0);
+        cpuMemory.write(0xE001, (byte) 0);
+
+        // the first rise reloads the counter, and the eleventh takes it to 0
+        assertEquals(PpuEvent.A12_RISE, ppu.getNextEvent());
+        assertEquals((10 * 341 + 260) * PpuEmulator.MASTER_CYCLES_PER_DOT, ppu.getNextEventTime());
+
+        ppu.catchUp(ppu.getNextEventTime());
+        assertFalse(ci.isIrqLineAsserted());
+        ppu.catchUp(ppu.getNextEventTime() + PpuEmulator.MASTER_CYCLES_PER_DOT);
+        assertTrue(ci.isIrqLineAsserted());
+
+        // the line is held until acknowledged
+        ppu.catchUp(ppu.getNextEventTime() + 100 * PpuEmulator.MASTER_CYCLES_PER_DOT);
+        assertTrue(ci.isIrqLineAsserted());
+        cpuMemory.write(0xE000, (byte) 0);
+        assertFalse(ci.isIrqLineAsserted());
+
+        // once disabled, no IRQ is predicted
+        assertTrue(ppu.getNextEvent() != PpuEvent.A12_RISE);
+    }
+
+    @Test
+    public void testUnsupported() {
+        assertThrows(IllegalArgumentException.class, () -> load(255, 2, 1));
+    }
+
+    @Test
+    public void testExtendedMapperNumber() {
+        // NES 2.0 mapper numbers go up to 4095 and must not be truncated to a supported one (260 & 0xFF is MMC3)
+        IllegalArgumentException ex = assertThrows(IllegalArgumentException.class, () -> load(260, 2, 1));
+        assertEquals("Unsupported mapper 260.", ex.getMessage());
+    }
+
+    private void load(int mapper, int prgBanks, int chrBanks) {
+        byte[] prg = new byte[prgBanks * PRG_BANK_SIZE];
+        for (int i = 0; i < prgBanks; i++) {
+            prg[i * PRG_BANK_SIZE] = (byte) i;
+        }
+        byte[] chr = new byte[chrBanks * CHR_BANK_SIZE];
+        for (int i = 0; i < chrBanks; i++) {
+            chr[i * CHR_BANK_SIZE] = (byte) i;
+        }
+
+        ci = new CpuInterpreter(new Cartridge(prg, chr, Cartridge.MirroringMode.HORIZONTAL,
+                false, false, mapper));
+        cpuMemory = ci.getMemory();
+        ppuMemory = ci.getPpu().getMemory();
+    }
+
+    private void writeMmc1(int addr, int value) {
+        for (int i = 0; i < 5; i++) {
+            cpuMemory.write(addr, (byte) ((value >> i) & 1));
+        }
+    }
+
+    private void writeMmc3(int register, int bank) {
+        cpuMemory.write(0x8000, (byte) register);
+        cpuMemory.write(0x8001, (byte) bank);
+    }
+
+    private void assertPrg(int addr, int bank) {
+        assertEquals(bank, cpuMemory.read(addr), "PRG bank at $" + Integer.toHexString(addr));
+    }
+
+    private void assertChr(int addr, int bank) {
+        assertEquals(bank, ppuMemory.read((short) addr), "CHR bank at $" + Integer.toHexString(addr));
+    }
+
+}
@@ -0,0 +1,118 @@
+/*
+ * This file is a part of jNES.
+ * Copyright (c) 2018-2019, Max Roncace <mproncace@gmail.com>
+ *
+ * The MIT License
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package net.caseif.jnes.emulation.ppu;
+
+import static net.caseif.jnes.emulation.ppu.PpuTestHelper.assertPixels;
+import static net.caseif.jnes.emulation.ppu.PpuTestHelper.createChr;
+import static net.caseif.jnes.emulation.ppu.PpuTestHelper.createPpu;
+import static net.caseif.jnes.emulation.ppu.PpuTestHelper.resetAddress;
+import static net.caseif.jnes.emulation.ppu.PpuTestHelper.runFrames;
+import static net.caseif.jnes.emulation.ppu.PpuTestHelper.writeVram;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class BackgroundRenderTest {
+
+    private static final int BACKDROP = 0x0F;
+    private static final int COLOR_1 = 0x21;
+    private static final int COLOR_3 = 0x30;
+
+    private PpuEmulator ppu;
+
+    @BeforeEach
+    public void init() {
+        byte[] chr = createChr();
+        // tile 2 is color 3 on its left half and transparent on its right
+        for (int row = 0; row < 8; row++) {
+            chr[0x20 + row] = (byte) 0xF0;
+            chr[0x28 + row] = (byte) 0xF0;
+        }
+
+        ppu = createPpu(chr);
+
+        // place tiles 1 and 2 at the top-left of the first nametable
+        writeVram(ppu, 0x2000, 1, 2);
+        writeVram(ppu, 0x3F00, BACKDROP, COLOR_1, 0x00, COLOR_3);
+
+        // reset the address and enable the background, including the leftmost 8 pixels
+        resetAddress(ppu);
+        ppu.writeMmio((byte) 0, (byte) 0);
+        ppu.writeMmio((byte) 1, (byte) 0b00001010);
+    }
+
+    @Test
+    public void testBackground() {
+        byte[] frame = runFrames(ppu, 2);
+
+        for (int y = 0; y < 8; y++) {
+            assertPixels(frame, y, 0, 8, COLOR_1);
+            assertPixels(frame, y, 8, 4, COLOR_3);
+            assertPixels(frame, y, 12, PpuEmulator.SCREEN_WIDTH - 12, BACKDROP);
+        }
+        assertPixels(frame, 8, 0, PpuEmulator.SCREEN_WIDTH, BACKDROP);
+    }
+
+    @Test
+    public void testFineScroll() {
+        ppu.writeMmio((byte) 5, (byte) 4);
+        ppu.writeMmio((byte) 5, (byte) 0);
+
+        byte[] frame = runFrames(ppu, 2);
+
+        assertPixels(frame, 0, 0, 4, COLOR_1);
+        assertPixels(frame, 0, 4, 4, COLOR_3);
+        assertPixels(frame, 0, 8, PpuEmulator.SCREEN_WIDTH - 12, BACKDROP);
+        // the rightmost pixels come from the second nametable, which mirrors
+        // the first under horizontal mirroring
+        assertPixels(frame, 0, PpuEmulator.SCREEN_WIDTH - 4, 4, COLOR_1);
+    }
+
+    @Test
+    public void testFrameHashes() {
+        ppu.setFrameHashingEnabled(true);
+        runFrames(ppu, 3);
+
+        // reset the address after the write so the scroll is unaffected
+        writeVram(ppu, 0x2001, 1);
+        writeVram(ppu, 0x2000);
+        runFrames(ppu, 2);
+
+        long[] hashes = ppu.getFrameHashes();
+        assertEquals(5, hashes.length);
+        assertEquals(hashes[1], hashes[2]);
+        assertNotEquals(hashes[2], hashes[4]);
+        assertEquals(hashes[3], hashes[4]);
+
+        // re-enabling hashing starts a new sequence
+        ppu.setFrameHashingEnabled(false);
+        ppu.setFrameHashingEnabled(true);
+        assertEquals(0, ppu.getFrameHashes().length);
+    }
+
+}
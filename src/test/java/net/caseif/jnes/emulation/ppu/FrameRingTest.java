@@ -0,0 +1,114 @@
+/*
+ * This file is a part of jNES.
+ * Copyright (c) 2018-2019, Max Roncace <mproncace@gmail.com>
+ *
+ * The MIT License
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package net.caseif.jnes.emulation.ppu;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import org.junit.jupiter.api.Test;
+
+public class FrameRingTest {
+
+    private final byte[] pixels = new byte[PpuEmulator.SCREEN_WIDTH * PpuEmulator.SCREEN_HEIGHT];
+    private final byte[] colorModes = new byte[PpuEmulator.SCREEN_HEIGHT];
+
+    @Test
+    public void testDropOldest() {
+        FrameRing ring = new FrameRing(2, FrameRing.OverflowPolicy.DROP_OLDEST);
+        for (int i = 1; i <= 5; i++) {
+            publish(ring, i);
+        }
+
+        assertEquals(3, ring.getDroppedFrames());
+        assertEquals(4, takeAndRelease(ring));
+        assertEquals(5, takeAndRelease(ring));
+        assertNull(ring.poll());
+    }
+
+    @Test
+    public void testSkip() {
+        FrameRing ring = new FrameRing(2, FrameRing.OverflowPolicy.SKIP);
+        for (int i = 1; i <= 5; i++) {
+            publish(ring, i);
+        }
+
+        assertEquals(3, ring.getDroppedFrames());
+        assertEquals(1, takeAndRelease(ring));
+        assertEquals(2, takeAndRelease(ring));
+        assertNull(ring.poll());
+    }
+
+    @Test
+    public void testHeldFramesAreNotReused() {
+        FrameRing ring = new FrameRing(2, FrameRing.OverflowPolicy.DROP_OLDEST);
+        publish(ring, 1);
+        publish(ring, 2);
+
+        FrameRing.Frame held = ring.poll();
+        publish(ring, 3);
+        publish(ring, 4);
+
+        assertEquals(1, held.getNumber());
+        assertEquals(1, held.getPixels()[0]);
+        assertEquals(4, takeAndRelease(ring));
+    }
+
+    @Test
+    public void testBlockingHandOff() throws InterruptedException {
+        FrameRing ring = new FrameRing(3, FrameRing.OverflowPolicy.BLOCK);
+        int frames = 2000;
+
+        Thread producer = new Thread(() -> {
+            for (int i = 1; i <= frames; i++) {
+                publish(ring, i);
+            }
+        });
+        producer.start();
+
+        for (int i = 1; i <= frames; i++) {
+            FrameRing.Frame frame = ring.take();
+            assertEquals(i, frame.getNumber());
+            assertEquals((byte) i, frame.getPixels()[frame.getPixels().length - 1]);
+            ring.release(frame);
+        }
+
+        producer.join();
+        assertEquals(0, ring.getDroppedFrames());
+    }
+
+    private void publish(FrameRing ring, int number) {
+        pixels[0] = (byte) number;
+        pixels[pixels.length - 1] = (byte) number;
+        ring.publish(pixels, colorModes, number);
+    }
+
+    private static long takeAndRelease(FrameRing ring) {
+        FrameRing.Frame frame = ring.poll();
+        ring.release(frame);
+        return frame.getNumber();
+    }
+
+}
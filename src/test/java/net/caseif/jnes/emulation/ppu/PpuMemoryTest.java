@@ -0,0 +1,97 @@
+/*
+ * This file is a part of jNES.
+ * Copyright (c) 2018-2019, Max Roncace <mproncace@gmail.com>
+ *
+ * The MIT License
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package net.caseif.jnes.emulation.ppu;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import net.caseif.jnes.model.Cartridge;
+
+import org.junit.jupiter.api.Test;
+
+public class PpuMemoryTest {
+
+    @Test
+    public void testHorizontalMirroring() {
+        PpuMemory memory = createMemory(Cartridge.MirroringMode.HORIZONTAL, false);
+
+        assertMirrored(memory, 0x2000, 0x2400);
+        assertMirrored(memory, 0x2800, 0x2C00);
+        assertDistinct(memory, 0x2000, 0x2800);
+    }
+
+    @Test
+    public void testVerticalMirroring() {
+        PpuMemory memory = createMemory(Cartridge.MirroringMode.VERTICAL, false);
+
+        assertMirrored(memory, 0x2000, 0x2800);
+        assertMirrored(memory, 0x2400, 0x2C00);
+        assertDistinct(memory, 0x2000, 0x2400);
+        // $3000-$3EFF mirrors $2000-$2EFF
+        assertMirrored(memory, 0x2400, 0x3400);
+    }
+
+    @Test
+    public void testFourScreen() {
+        PpuMemory memory = createMemory(Cartridge.MirroringMode.HORIZONTAL, true);
+
+        assertDistinct(memory, 0x2000, 0x2400);
+        assertDistinct(memory, 0x2000, 0x2800);
+        assertDistinct(memory, 0x2000, 0x2C00);
+        assertDistinct(memory, 0x2800, 0x2C00);
+    }
+
+    @Test
+    public void testRemap() {
+        PpuMemory memory = createMemory(Cartridge.MirroringMode.HORIZONTAL, false);
+        memory.write((short) 0x2010, (byte) 1);
+        memory.write((short) 0x2810, (byte) 2);
+
+        // existing contents are preserved across a mirroring change
+        memory.setMirroringMode(Cartridge.MirroringMode.SINGLE_SCREEN_UPPER);
+        assertEquals(2, memory.read((short) 0x2010));
+        assertEquals(2, memory.read((short) 0x2410));
+
+        memory.setMirroringMode(Cartridge.MirroringMode.VERTICAL);
+        assertEquals(1, memory.read((short) 0x2010));
+        assertEquals(2, memory.read((short) 0x2410));
+    }
+
+    private static PpuMemory createMemory(Cartridge.MirroringMode mode, boolean fourScreen) {
+        return new PpuMemory(new Cartridge(new byte[16384], new byte[0x2000], mode, false, fourScreen, 0));
+    }
+
+    private static void assertMirrored(PpuMemory memory, int a, int b) {
+        memory.write((short) (a + 0x123), (byte) 0x5A);
+        assertEquals(0x5A, memory.read((short) (b + 0x123)));
+    }
+
+    private static void assertDistinct(PpuMemory memory, int a, int b) {
+        memory.write((short) (a + 0x45), (byte) 1);
+        memory.write((short) (b + 0x45), (byte) 2);
+        assertEquals(1, memory.read((short) (a + 0x45)));
+    }
+
+}
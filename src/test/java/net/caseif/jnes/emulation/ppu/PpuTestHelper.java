@@ -0,0 +1,86 @@
+/*
+ * This file is a part of jNES.
+ * Copyright (c) 2018-2019, Max Roncace <mproncace@gmail.com>
+ *
+ * The MIT License
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package net.caseif.jnes.emulation.ppu;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import net.caseif.jnes.emulation.cpu.CpuInterpreter;
+import net.caseif.jnes.model.Cartridge;
+
+class PpuTestHelper {
+
+    // tile 1 is solid color 1, and every other tile is transparent
+    static byte[] createChr() {
+        byte[] chr = new byte[0x2000];
+        for (int row = 0; row < 8; row++) {
+            chr[0x10 + row] = (byte) 0xFF;
+        }
+        return chr;
+    }
+
+    // every sprite is hidden below the screen
+    static byte[] createOam() {
+        byte[] oam = new byte[256];
+        for (int i = 0; i < oam.length; i += 4) {
+            oam[i] = (byte) 0xEF;
+        }
+        return oam;
+    }
+
+    static PpuEmulator createPpu(byte[] chr) {
+        return new CpuInterpreter(new Cartridge(new byte[16384], chr,
+                Cartridge.MirroringMode.HORIZONTAL, false, false, 0)).getPpu();
+    }
+
+    static void writeVram(PpuEmulator ppu, int addr, int... values) {
+        ppu.writeMmio((byte) 6, (byte) (addr >> 8));
+        ppu.writeMmio((byte) 6, (byte) addr);
+        for (int value : values) {
+            ppu.writeMmio((byte) 7, (byte) value);
+        }
+    }
+
+    // resets the VRAM address so that earlier writes don't affect the scroll
+    static void resetAddress(PpuEmulator ppu) {
+        ppu.writeMmio((byte) 6, (byte) 0);
+        ppu.writeMmio((byte) 6, (byte) 0);
+    }
+
+    static byte[] runFrames(PpuEmulator ppu, int frames) {
+        long target = ppu.getFrameCount() + frames;
+        while (ppu.getFrameCount() < target) {
+            ppu.tick();
+        }
+        return ppu.getFrameBuffer();
+    }
+
+    static void assertPixels(byte[] frame, int y, int x, int count, int color) {
+        for (int i = x; i < x + count; i++) {
+            assertEquals(color, frame[y * PpuEmulator.SCREEN_WIDTH + i], "Pixel (" + i + ", " + y + ")");
+        }
+    }
+
+}
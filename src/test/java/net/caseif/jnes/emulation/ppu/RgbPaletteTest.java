@@ -0,0 +1,102 @@
+/*
+ * This file is a part of jNES.
+ * Copyright (c) 2018-2019, Max Roncace <mproncace@gmail.com>
+ *
+ * The MIT License
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package net.caseif.jnes.emulation.ppu;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+
+public class RgbPaletteTest {
+
+    @Test
+    public void testLoad() throws IOException {
+        RgbPalette palette = RgbPalette.load(new ByteArrayInputStream(createPal(64)));
+
+        assertEquals(0xFF000000, palette.toArgb(0x00, 0));
+        assertEquals(0xFF151515, palette.toArgb(0x15, 0));
+        // grayscale clears the low 4 bits of the color
+        assertEquals(0xFF101010, palette.toArgb(0x15, 0b0001));
+        // red emphasis attenuates green and blue
+        int emphasized = palette.toArgb(0x3F, 0b0010);
+        assertEquals(0x3F, (emphasized >> 16) & 0xFF);
+        assertEquals((int) (0x3F * 0.816328), emphasized & 0xFF);
+    }
+
+    @Test
+    public void testFullEmphasis() throws IOException {
+        RgbPalette palette = RgbPalette.load(new ByteArrayInputStream(createPal(64)));
+
+        // each channel is attenuated by the other two bits, so all three together darken every channel
+        int dimmed = (int) (0x3F * 0.816328);
+        assertEquals(0xFF000000 | dimmed * 0x010101, palette.toArgb(0x3F, 0b1110));
+        // red and green emphasis each attenuate the other as well as blue
+        assertEquals(0xFF000000 | dimmed * 0x010101, palette.toArgb(0x3F, 0b0110));
+    }
+
+    @Test
+    public void testLoadWithEmphasis() throws IOException {
+        RgbPalette palette = RgbPalette.load(new ByteArrayInputStream(createPal(512)));
+
+        // emphasized colors are taken from the file as-is
+        assertEquals(0xFF000000 | (3 * 64 + 0x12) * 0x010101 & 0xFFFFFF, palette.toArgb(0x12, 0b0110));
+        assertEquals(0xFF000000 | (3 * 64 + 0x10) * 0x010101 & 0xFFFFFF, palette.toArgb(0x12, 0b0111));
+    }
+
+    @Test
+    public void testBadSize() {
+        assertThrows(IllegalArgumentException.class, () -> RgbPalette.load(new ByteArrayInputStream(new byte[100])));
+    }
+
+    @Test
+    public void testFrameConversion() {
+        RgbPalette palette = RgbPalette.getDefault();
+
+        byte[] frame = new byte[] {0x01, 0x02, 0x21, 0x22};
+        byte[] modes = new byte[] {0, 0b0001};
+        int[] argb = new int[4];
+        palette.toArgb(frame, modes, argb);
+
+        assertArrayEquals(new int[] {
+                palette.toArgb(0x01, 0), palette.toArgb(0x02, 0),
+                palette.toArgb(0x20, 0), palette.toArgb(0x20, 0)
+        }, argb);
+    }
+
+    // creates a palette in which each entry is a gray of its own index
+    private static byte[] createPal(int count) {
+        byte[] pal = new byte[count * 3];
+        for (int i = 0; i < pal.length; i++) {
+            pal[i] = (byte) (i / 3);
+        }
+        return pal;
+    }
+
+}
@@ -0,0 +1,141 @@
+/*
+ * This file is a part of jNES.
+ * Copyright (c) 2018-2019, Max Roncace <mproncace@gmail.com>
+ *
+ * The MIT License
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package net.caseif.jnes.emulation.ppu;
+
+import static net.caseif.jnes.emulation.ppu.PpuTestHelper.createChr;
+import static net.caseif.jnes.emulation.ppu.PpuTestHelper.createOam;
+import static net.caseif.jnes.emulation.ppu.PpuTestHelper.createPpu;
+import static net.caseif.jnes.emulation.ppu.PpuTestHelper.resetAddress;
+import static net.caseif.jnes.emulation.ppu.PpuTestHelper.writeVram;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class ScanlineReuseTest {
+
+    private static final int DOTS_PER_SCANLINE = 341;
+
+    // one PPU with scanline reuse and one without, driven identically
+    private PpuEmulator reusing;
+    private PpuEmulator rendering;
+
+    @BeforeEach
+    public void init() {
+        byte[] chr = createChr();
+        // tile 2 is a diagonal of color 3
+        for (int row = 0; row < 8; row++) {
+            chr[0x20 + row] = (byte) (0x80 >> row);
+            chr[0x28 + row] = (byte) (0x80 >> row);
+        }
+
+        reusing = createPpu(chr);
+        rendering = createPpu(chr);
+        rendering.setScanlineReuseEnabled(false);
+
+        for (PpuEmulator ppu : new PpuEmulator[] {reusing, rendering}) {
+            // a row of alternating tiles, some of which use another palette
+            for (int i = 0; i < 32; i++) {
+                writeVram(ppu, 0x2000 + 32 * 4 + i, i % 3);
+            }
+            writeVram(ppu, 0x23C8, 0b01010101);
+            writeVram(ppu, 0x3F00, 0x0F, 0x21, 0x22, 0x23, 0x0F, 0x15, 0x16, 0x17);
+            writeVram(ppu, 0x3F11, 0x30);
+
+            byte[] oam = createOam();
+            // a sprite other than sprite 0 overlapping the tiles
+            oam[4] = 30;
+            oam[5] = 1;
+            oam[7] = 50;
+            ppu.writeOamDma(oam);
+
+            ppu.writeMmio((byte) 0, (byte) 0);
+            ppu.writeMmio((byte) 1, (byte) 0b00011110);
+            resetAddress(ppu);
+        }
+    }
+
+    @Test
+    public void testStaticScreen() {
+        // the first frame starts without a pre-render scanline, so the second
+        // may differ from it
+        runFrames(2);
+        long reused = reusing.reusedScanlines;
+
+        runFrames(2);
+        assertEquals(reused + 2 * PpuEmulator.SCREEN_HEIGHT, reusing.reusedScanlines);
+    }
+
+    @Test
+    public void testChanges() {
+        runFrames(2);
+
+        // change a tile, then a palette entry
+        for (PpuEmulator ppu : new PpuEmulator[] {reusing, rendering}) {
+            writeVram(ppu, 0x2000 + 32 * 4 + 5, 2);
+            resetAddress(ppu);
+        }
+        runFrames(2);
+
+        for (PpuEmulator ppu : new PpuEmulator[] {reusing, rendering}) {
+            writeVram(ppu, 0x3F05, 0x2A);
+            resetAddress(ppu);
+        }
+        runFrames(2);
+
+        // scroll partway through a frame
+        tickBoth(40 * DOTS_PER_SCANLINE + 100);
+        for (PpuEmulator ppu : new PpuEmulator[] {reusing, rendering}) {
+            ppu.writeMmio((byte) 5, (byte) 3);
+            ppu.writeMmio((byte) 5, (byte) 0);
+        }
+        runFrames(3);
+
+        assertTrue(reusing.reusedScanlines > 0);
+    }
+
+    // both PPUs run identically, so each frame ends at the same dot
+    private void runFrames(int frames) {
+        for (int i = 0; i < frames; i++) {
+            PpuTestHelper.runFrames(rendering, 1);
+            PpuTestHelper.runFrames(reusing, 1);
+
+            assertEquals(rendering.getFrameCount(), reusing.getFrameCount());
+            assertArrayEquals(rendering.getFrameBuffer(), reusing.getFrameBuffer(),
+                    "Frame " + rendering.getFrameCount());
+        }
+    }
+
+    private void tickBoth(int dots) {
+        for (int i = 0; i < dots; i++) {
+            reusing.tick();
+            rendering.tick();
+        }
+    }
+
+}
@@ -0,0 +1,164 @@
+/*
+ * This file is a part of jNES.
+ * Copyright (c) 2018-2019, Max Roncace <mproncace@gmail.com>
+ *
+ * The MIT License
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package net.caseif.jnes.emulation.ppu;
+
+import static net.caseif.jnes.emulation.ppu.PpuTestHelper.assertPixels;
+import static net.caseif.jnes.emulation.ppu.PpuTestHelper.createChr;
+import static net.caseif.jnes.emulation.ppu.PpuTestHelper.createOam;
+import static net.caseif.jnes.emulation.ppu.PpuTestHelper.createPpu;
+import static net.caseif.jnes.emulation.ppu.PpuTestHelper.resetAddress;
+import static net.caseif.jnes.emulation.ppu.PpuTestHelper.writeVram;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class SpriteRenderTest {
+
+    private static final int BACKDROP = 0x0F;
+    private static final int BG_COLOR = 0x21;
+    private static final int SPRITE_COLOR = 0x16;
+
+    private PpuEmulator ppu;
+    private final byte[] oam = createOam();
+
+    @BeforeEach
+    public void init() {
+        ppu = createPpu(createChr());
+
+        // background tile 1 at the top-left of the first nametable
+        writeVram(ppu, 0x2000, 1);
+        writeVram(ppu, 0x3F00, BACKDROP, BG_COLOR);
+        writeVram(ppu, 0x3F11, SPRITE_COLOR);
+
+        resetAddress(ppu);
+        ppu.writeMmio((byte) 0, (byte) 0);
+        // enable the background and sprites, including the leftmost 8 pixels
+        ppu.writeMmio((byte) 1, (byte) 0b00011110);
+    }
+
+    @Test
+    public void testSpriteOverBackground() {
+        setSprite(0, 4, 0, 1, 0);
+        setSprite(1, 20, 20, 1, 0);
+
+        byte[] frame = runFrames(2);
+
+        // sprites are drawn one scanline below their y-coordinate
+        assertPixels(frame, 0, 0, 8, BG_COLOR);
+        for (int y = 1; y < 9; y++) {
+            assertPixels(frame, y, 4, 8, SPRITE_COLOR);
+            assertPixels(frame, y, 20, 8, BACKDROP);
+        }
+        for (int y = 21; y < 29; y++) {
+            assertPixels(frame, y, 20, 8, SPRITE_COLOR);
+        }
+        assertTrue(readSprite0Hit());
+    }
+
+    @Test
+    public void testSpriteBehindBackground() {
+        // priority bit set
+        setSprite(0, 4, 0, 1, 0x20);
+
+        byte[] frame = runFrames(2);
+
+        assertPixels(frame, 1, 0, 8, BG_COLOR);
+        assertPixels(frame, 1, 8, 4, SPRITE_COLOR);
+        // sprite 0 hit is independent of priority
+        assertTrue(readSprite0Hit());
+    }
+
+    @Test
+    public void testNoSprite0HitOverBackdrop() {
+        setSprite(0, 40, 0, 1, 0);
+
+        runFrames(2);
+
+        assertFalse(readSprite0Hit());
+    }
+
+    @Test
+    public void testEventPrediction() {
+        setSprite(0, 4, 0, 1, 0);
+        ppu.writeMmio((byte) 3, (byte) 0);
+        ppu.writeOamDma(oam);
+
+        // sprite 0 is drawn from the first pixel of the second scanline
+        assertEquals(PpuEvent.SPRITE_ZERO_HIT, ppu.getNextEvent());
+        assertEquals((341 + 5) * PpuEmulator.MASTER_CYCLES_PER_DOT, ppu.getNextEventTime());
+
+        ppu.catchUp(ppu.getNextEventTime());
+        assertFalse(readSprite0Hit());
+        ppu.catchUp(ppu.getNextEventTime() + PpuEmulator.MASTER_CYCLES_PER_DOT);
+        assertTrue(readSprite0Hit());
+
+        assertEquals(PpuEvent.FRAME_COMPLETE, ppu.getNextEvent());
+        ppu.catchUp(ppu.getNextEventTime() + PpuEmulator.MASTER_CYCLES_PER_DOT);
+        assertEquals(1, ppu.getFrameCount());
+
+        assertEquals(PpuEvent.VBLANK_START, ppu.getNextEvent());
+        ppu.catchUp(ppu.getNextEventTime());
+        assertEquals(0, ppu.readMmio((byte) 2) & 0x80);
+        ppu.catchUp(ppu.getNextEventTime() + PpuEmulator.MASTER_CYCLES_PER_DOT);
+        assertEquals(0x80, ppu.readMmio((byte) 2) & 0x80);
+
+        // reading the status clears the vblank flag, but not the hit flag
+        assertEquals(0, ppu.readMmio((byte) 2) & 0x80);
+        assertTrue(readSprite0Hit());
+
+        // which stays set until the pre-render scanline, so no hit is
+        // predicted before then
+        assertEquals(PpuEvent.PRE_RENDER_END, ppu.getNextEvent());
+        assertEquals((261 * 341 + 339) * PpuEmulator.MASTER_CYCLES_PER_DOT, ppu.getNextEventTime());
+
+        ppu.catchUp((262 * 341 + 1) * PpuEmulator.MASTER_CYCLES_PER_DOT);
+        assertFalse(readSprite0Hit());
+    }
+
+    private void setSprite(int index, int x, int y, int tile, int attrib) {
+        oam[index * 4] = (byte) y;
+        oam[index * 4 + 1] = (byte) tile;
+        oam[index * 4 + 2] = (byte) attrib;
+        oam[index * 4 + 3] = (byte) x;
+    }
+
+    private boolean readSprite0Hit() {
+        // the flag is cleared on the pre-render line, so check it during vblank
+        return (ppu.readMmio((byte) 2) & 0x40) != 0;
+    }
+
+    // uploads the sprites before running
+    private byte[] runFrames(int frames) {
+        ppu.writeMmio((byte) 3, (byte) 0);
+        ppu.writeOamDma(oam);
+
+        return PpuTestHelper.runFrames(ppu, frames);
+    }
+
+}
@@ -0,0 +1,60 @@
+/*
+ * This file is a part of jNES.
+ * Copyright (c) 2018-2019, Max Roncace <mproncace@gmail.com>
+ *
+ * The MIT License
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package net.caseif.jnes.emulation.ppu;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.jupiter.api.Test;
+
+public class TileCacheTest {
+
+    @Test
+    public void testDecode() {
+        byte[] chr = new byte[0x2000];
+        // row 0 of tile 1: pixels 0, 1, 2, 3, 0, 1, 2, 3
+        chr[0x10] = 0b01010101;
+        chr[0x18] = 0b00110011;
+
+        TileCache cache = new TileCache(chr);
+        assertEquals(0b00_01_10_11_00_01_10_11, cache.getRow(0x10));
+        assertEquals(0, cache.getRow(0x11));
+    }
+
+    @Test
+    public void testInvalidate() {
+        byte[] chr = new byte[0x2000];
+        TileCache cache = new TileCache(chr);
+        assertEquals(0, cache.getRow(0x23));
+
+        // the stale row is returned until the tile is invalidated
+        chr[0x2B] = (byte) 0xFF;
+        assertEquals(0, cache.getRow(0x23));
+
+        cache.invalidate(0x2B);
+        assertEquals(0b10101010_10101010, cache.getRow(0x23));
+    }
+
+}
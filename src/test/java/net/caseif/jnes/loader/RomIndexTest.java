@@ -0,0 +1,163 @@
+/*
+ * This file is a part of jNES.
+ * Copyright (c) 2018-2019, Max Roncace <mproncace@gmail.com>
+ *
+ * The MIT License
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package net.caseif.jnes.loader;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import net.caseif.jnes.model.Cartridge;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+public class RomIndexTest {
+
+    @Test
+    public void testUpdate() throws IOException {
+        Path root = Files.createTempDirectory("jnes");
+        try {
+            byte[] first = buildRom(1, 0);
+            Files.write(root.resolve("first.nes"), first);
+            Files.createDirectories(root.resolve("sub/dir"));
+            Files.write(root.resolve("sub/dir/second.NES"), buildRom(4, 1));
+            Files.write(root.resolve("sub/notes.txt"), new byte[] { 1, 2, 3 });
+            Files.write(root.resolve("sub/bad.nes"), new byte[] { 1, 2, 3 });
+
+            RomIndex index = RomIndex.empty().update(root);
+            assertEquals(2, index.getEntries().size());
+            assertEquals(3, index.getReadCount());
+
+            Path indexFile = root.resolve("jnes.idx");
+            index.write(indexFile);
+            index = RomIndex.read(indexFile);
+
+            CRC32 crc = new CRC32();
+            crc.update(first, 16, first.length - 16);
+            List<RomIndex.Entry> matches = index.findByCrc((int) crc.getValue());
+            assertEquals(1, matches.size());
+            assertEquals("first.nes", matches.get(0).getPath());
+            assertEquals(Cartridge.MirroringMode.VERTICAL, matches.get(0).getMirroringMode());
+            assertEquals(16384, matches.get(0).getPrgSize());
+
+            List<RomIndex.Entry> mmc3 = index.findByMapper(4);
+            assertEquals(1, mmc3.size());
+            assertEquals("sub/dir/second.NES", mmc3.get(0).getPath());
+            assertEquals(8192, mmc3.get(0).getChrSize());
+
+            // the whole-ROM CRC is combined from those of the PRG and CHR
+            byte[] second = buildRom(4, 1);
+            crc.reset();
+            crc.update(second, 16, second.length - 16);
+            assertEquals((int) crc.getValue(), mmc3.get(0).getRomCrc());
+            crc.reset();
+            crc.update(first, 16, first.length - 16);
+
+            // only changed files are read again, and deleted ones are dropped
+            Path changed = root.resolve("first.nes");
+            Files.write(changed, buildRom(2, 0));
+            Files.setLastModifiedTime(changed, FileTime.fromMillis(Files.getLastModifiedTime(changed).toMillis() + 1000));
+            Files.delete(root.resolve("sub/bad.nes"));
+
+            index = index.update(root);
+            assertEquals(2, index.getEntries().size());
+            assertEquals(1, index.getReadCount());
+            assertTrue(index.findByCrc((int) crc.getValue()).isEmpty());
+            assertEquals(1, index.findByMapper(2).size());
+        } finally {
+            try (Stream<Path> files = Files.walk(root)) {
+                files.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+            }
+        }
+    }
+
+    @Test
+    public void testUnreadable() throws IOException {
+        Path root = Files.createTempDirectory("jnes");
+        try {
+            Files.write(root.resolve("good.nes"), buildRom(1, 0));
+            Path locked = Files.write(root.resolve("locked.nes"), buildRom(2, 0));
+            Files.setPosixFilePermissions(locked, Collections.emptySet());
+            if (Files.isReadable(locked)) {
+                // permissions aren't enforced for this user
+                return;
+            }
+
+            RomIndex index = RomIndex.empty().update(root);
+            assertEquals(1, index.getEntries().size());
+            assertEquals(Collections.singletonList("locked.nes"), index.getFailedPaths());
+        } finally {
+            try (Stream<Path> files = Files.walk(root)) {
+                files.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+            }
+        }
+    }
+
+    @Test
+    public void testCombineCrc() {
+        byte[] data = new byte[1000];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) (i * 31);
+        }
+
+        CRC32 whole = new CRC32();
+        whole.update(data);
+
+        for (int split : new int[] { 0, 1, 500, 999, 1000 }) {
+            CRC32 first = new CRC32();
+            first.update(data, 0, split);
+            CRC32 second = new CRC32();
+            second.update(data, split, data.length - split);
+
+            assertEquals((int) whole.getValue(),
+                    RomIndex.combineCrc((int) first.getValue(), (int) second.getValue(), data.length - split));
+        }
+    }
+
+    private static byte[] buildRom(int mapper, int chrBanks) {
+        byte[] rom = new byte[16 + 16384 + chrBanks * 8192];
+        rom[0] = 'N';
+        rom[1] = 'E';
+        rom[2] = 'S';
+        rom[3] = 0x1A;
+        rom[4] = 1;
+        rom[5] = (byte) chrBanks;
+        rom[6] = (byte) ((mapper << 4) | 1);
+        for (int i = 16; i < rom.length; i++) {
+            rom[i] = (byte) (i * 7 + mapper);
+        }
+        return rom;
+    }
+
+}
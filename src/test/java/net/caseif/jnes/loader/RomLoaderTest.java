@@ -0,0 +1,149 @@
+/*
+ * This file is a part of jNES.
+ * Copyright (c) 2018-2019, Max Roncace <mproncace@gmail.com>
+ *
+ * The MIT License
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package net.caseif.jnes.loader;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import net.caseif.jnes.model.Cartridge;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+
+public class RomLoaderTest {
+
+    @Test
+    public void testLoadPath() throws IOException {
+        byte[] rom = buildRom(2, 1);
+
+        Path file = Files.createTempFile("jnes", ".nes");
+        try {
+            Files.write(file, rom);
+
+            Cartridge cart = new RomLoader().load(file);
+            Cartridge streamed = new RomLoader().load(new ByteArrayInputStream(rom));
+            assertArrayEquals(streamed.getPrgRom(), cart.getPrgRom());
+            assertArrayEquals(streamed.getChrRom(), cart.getChrRom());
+            assertEquals(2 * 16384, cart.getPrgRom().length);
+
+            // later loads of the file share the same cartridge
+            assertSame(cart, new RomLoader().load(file));
+
+            // until the file is modified
+            Files.setLastModifiedTime(file, FileTime.fromMillis(Files.getLastModifiedTime(file).toMillis() + 1000));
+            assertNotSame(cart, new RomLoader().load(file));
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void testINesHeader() throws IOException {
+        byte[] rom = buildRom(128, 0);
+        rom[6] = 0x41;
+        rom[7] = 0x20;
+
+        // 128 banks don't overflow the signed header byte
+        Cartridge cart = new RomLoader().load(new ByteArrayInputStream(rom));
+        assertEquals(128 * 16384, cart.getPrgRom().length);
+        assertEquals(0x24, cart.getMapper());
+        assertEquals(Cartridge.MirroringMode.VERTICAL, cart.getMirroringMode());
+        // iNES 1.0 can't specify RAM, so the usual 8KB is assumed
+        assertEquals(0x2000, cart.getPrgRamSize());
+        assertEquals(0x2000, cart.getChrRamSize());
+
+        // junk in $C-F means the upper mapper nibble is junk too
+        rom[12] = 'D';
+        assertEquals(4, new RomLoader().load(new ByteArrayInputStream(rom)).getMapper());
+    }
+
+    @Test
+    public void testNes2Header() throws IOException {
+        byte[] rom = buildRom(0x102, 0);
+        rom[4] = 0x02;
+        rom[6] = 0x12;
+        rom[7] = 0x48;
+        // mapper $1x4, submapper 3
+        rom[8] = 0x31;
+        // 0x102 PRG banks
+        rom[9] = 0x01;
+        // no volatile PRG RAM, 8KB of battery-backed PRG RAM and 32KB of CHR RAM
+        rom[10] = 0x70;
+        rom[11] = 0x09;
+        rom[12] = 1;
+
+        Cartridge cart = new RomLoader().load(new ByteArrayInputStream(rom));
+        assertEquals(0x102 * 16384, cart.getPrgRom().length);
+        assertEquals(0, cart.getChrRom().length);
+        assertEquals(0x141, cart.getMapper());
+        assertEquals(3, cart.getSubmapper());
+        assertEquals(0, cart.getPrgRamSize());
+        assertEquals(0x2000, cart.getPrgNvramSize());
+        assertEquals(0x8000, cart.getChrRamSize());
+        assertEquals(0, cart.getChrNvramSize());
+        assertEquals(Cartridge.TimingRegion.PAL, cart.getTimingRegion());
+    }
+
+    @Test
+    public void testNes2ExponentSize() throws IOException {
+        byte[] rom = buildRom(0, 0);
+        rom = Arrays.copyOf(rom, rom.length + 3 * 512);
+        rom[7] = 0x08;
+        // 2^9 * 3 bytes of PRG
+        rom[4] = (9 << 2) | 1;
+        rom[9] = 0x0F;
+
+        assertEquals(3 * 512, new RomLoader().load(new ByteArrayInputStream(rom)).getPrgRom().length);
+
+        // a ROM shorter than its header claims is rejected
+        byte[] truncated = Arrays.copyOf(rom, rom.length - 1);
+        assertThrows(IllegalArgumentException.class, () -> new RomLoader().load(new ByteArrayInputStream(truncated)));
+    }
+
+    private static byte[] buildRom(int prgBanks, int chrBanks) {
+        byte[] rom = new byte[16 + prgBanks * 16384 + chrBanks * 8192];
+        rom[0] = 'N';
+        rom[1] = 'E';
+        rom[2] = 'S';
+        rom[3] = 0x1A;
+        rom[4] = (byte) prgBanks;
+        rom[5] = (byte) chrBanks;
+        for (int i = 16; i < rom.length; i++) {
+            rom[i] = (byte) (i * 31);
+        }
+        return rom;
+    }
+
+}
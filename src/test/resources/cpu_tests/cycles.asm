@@ -0,0 +1,32 @@
+;;;;;;;;;;;;;;;;
+; test cycle counts
+;;;;;;;;;;;;;;;;
+
+; required for execution on the NES
+.org $8000
+
+LDA #$01            ; 2 cycles
+STA $00             ; 3 cycles
+LDX #$01            ; 2 cycles
+LDA $80FF,X         ; 5 cycles (page crossed)
+LDA $8000,X         ; 4 cycles
+STA $0200,X         ; 5 cycles (no penalty for writes)
+INC $00             ; 5 cycles
+INC $0200,X         ; 7 cycles
+LDA #$01            ; 2 cycles (clears zero flag)
+BEQ not_taken       ; 2 cycles (not taken)
+not_taken:
+BNE taken           ; 3 cycles (taken)
+taken:
+JSR subroutine      ; 6 cycles
+JMP far_branch      ; 3 cycles
+
+subroutine:
+RTS                 ; 6 cycles
+
+.org $80FC
+far_branch:
+BNE far_target      ; 4 cycles (taken, page crossed)
+.org $8100
+far_target:
+NOP                 ; 2 cycles
@@ -0,0 +1,29 @@
+;;;;;;;;;;;;;;;;
+; exercise the interaction between the CPU and PPU
+;;;;;;;;;;;;;;;;
+
+; required for execution on the NES
+.org $8000
+
+LDA #$80            ; enable NMIs
+STA $2000
+LDA #$0A            ; enable background rendering
+STA $2001
+
+loop:
+LDA $2002           ; poll vblank flag
+BPL loop
+INC $10             ; count vblanks seen by polling
+JMP loop
+
+nmi:
+INC $11             ; count NMIs
+LDA $11
+STA $2005           ; scroll by the NMI count
+STA $2005
+RTI
+
+.org $BFFA          ; interrupt vectors (we take advantage of mirroring here)
+.dw nmi
+.dw $8000
+.dw nmi
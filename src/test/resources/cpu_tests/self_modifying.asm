@@ -0,0 +1,28 @@
+;;;;;;;;;;;;;;;;
+; test execution of code copied into and modified in RAM
+;;;;;;;;;;;;;;;;
+
+; required for execution on the NES
+.org $8000
+
+; copy "LDA #$01; RTS" into RAM
+LDA #$A9
+STA $0300
+LDA #$01
+STA $0301
+LDA #$60
+STA $0302
+
+JSR $0300           ; acc = 1
+TAX                 ; x = 1
+
+LDA #$02            ; patch the immediate operand of the routine
+STA $0301
+JSR $0300           ; acc = 2
+TAY                 ; y = 2
+
+LDA #$03            ; patch it again through a mirror of RAM
+STA $0B01
+JSR $0300           ; acc = 3
+
+NOP
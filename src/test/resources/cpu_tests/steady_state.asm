@@ -0,0 +1,34 @@
+;;;;;;;;;;;;;;;;
+; steady-state loop for allocation testing
+;;;;;;;;;;;;;;;;
+
+; required for execution on the NES
+.org $8000
+
+start:
+LDA #$00            ; set up pointer at $20 to $0300
+STA $20
+LDA #$03
+STA $21
+LDX #$00            ; reset registers
+LDY #$00
+
+loop:
+LDA $10,X           ; zero-page (x-indexed) read
+ADC #$01
+STA $10,X           ; zero-page (x-indexed) write
+STA $0200,X         ; absolute (x-indexed) write
+LDA ($20),Y         ; indirect (y-indexed) read
+EOR #$FF
+STA ($20),Y         ; indirect (y-indexed) write
+JSR subroutine      ; exercise the stack
+INX
+INY
+BNE loop            ; loop over a full page
+JMP start           ; reset the pointer and loop forever
+
+subroutine:
+PHA
+INC $00
+PLA
+RTS